@@ -2,22 +2,26 @@ package org.kmymoney.viewer;
 
 import java.awt.BorderLayout;
 import java.awt.Component;
-import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.Action;
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
 import javax.swing.JComponent;
+import javax.swing.JDialog;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -27,11 +31,13 @@ import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JSeparator;
 import javax.swing.JSplitPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTree;
+import javax.swing.SwingWorker;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.event.TreeSelectionEvent;
@@ -47,8 +53,16 @@ import org.kmymoney.viewer.actions.AccountAction;
 import org.kmymoney.viewer.actions.OpenAccountInNewTab;
 import org.kmymoney.viewer.actions.OpenAccountInNewWindow;
 import org.kmymoney.viewer.actions.TransactionSplitAction;
+import org.kmymoney.viewer.data.BookIndex;
+import org.kmymoney.viewer.data.CompactBook;
+import org.kmymoney.viewer.data.KeywordMatcher;
 import org.kmymoney.viewer.models.KMyMoneyAccountsTreeModel;
+import org.kmymoney.viewer.models.KMyMoneyFileAdapter;
 import org.kmymoney.viewer.models.KMyMoneyFileImpl;
+import org.kmymoney.viewer.models.KMyMoneyFileWithRoot;
+import org.kmymoney.viewer.panels.DashboardDefinition;
+import org.kmymoney.viewer.panels.DashboardPanel;
+import org.kmymoney.viewer.panels.HighlightRules;
 import org.kmymoney.viewer.panels.TransactionsPanel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -135,12 +149,145 @@ public class JKMyMoneyViewer extends JFrame {
 		}
 	}
 
+	/**
+	 * The phases a file goes through while it is being loaded.
+	 */
+	public enum LoadPhase {
+		PARSING       ("JKMyMoneyViewer.10"),
+		INDEXING      ("JKMyMoneyViewer.11"),
+		BUILDING_TREE ("JKMyMoneyViewer.12");
+
+		private final String messageKey;
+
+		LoadPhase(final String messageKey) {
+			this.messageKey = messageKey;
+		}
+
+		public String getLabel() {
+			return Messages_JKMyMoneyViewer.getString(messageKey);
+		}
+	}
+
+	/**
+	 * Loads a file off the event-dispatch-thread.
+	 * <br>
+	 * The file currently shown stays usable while this worker runs.
+	 * Only when the new file has been parsed, indexed and its
+	 * account-tree has been built, {@link #done()} swaps it in
+	 * (on the EDT, in one step). A cancelled worker never touches
+	 * the GUI.
+	 */
+	private final class LoadFileWorker extends SwingWorker<KMyMoneyAccountsTreeModel, LoadPhase> {
+
+		/**
+		 * The file to load.
+		 */
+		private final File myFile;
+
+		/**
+		 * The loaded model, set by {@link #doInBackground()}.
+		 */
+		private volatile KMyMoneyFileWithRoot myLoadedModel;
+
+		private LoadFileWorker(final File aFile) {
+			myFile = aFile;
+		}
+
+		@Override
+		protected KMyMoneyAccountsTreeModel doInBackground() throws Exception {
+			long start = System.currentTimeMillis();
+
+			publish(LoadPhase.PARSING);
+			KMyMoneyFileWithRoot model = wrapModel(createModelFromFile(myFile));
+			if ( isCancelled() ) {
+				return null;
+			}
+			long parsed = System.currentTimeMillis();
+
+			publish(LoadPhase.INDEXING);
+			buildIndexes(model, HighlightRules.getConfigured().getMatcher());
+			if ( isCancelled() ) {
+				return null;
+			}
+			long indexed = System.currentTimeMillis();
+
+			publish(LoadPhase.BUILDING_TREE);
+			KMyMoneyAccountsTreeModel treeModel = new KMyMoneyAccountsTreeModel(model);
+			myLoadedModel = model;
+			long end = System.currentTimeMillis();
+			LOGGER.info("doInBackground: Loaded '" + myFile.getAbsolutePath() + "' in " + (end - start) + " ms " +
+						"(parsing " + (parsed - start) + " ms, " +
+						"indexing " + (indexed - parsed) + " ms, " +
+						"account tree " + (end - indexed) + " ms)");
+
+			return treeModel;
+		}
+
+		/**
+		 * Build the viewer's indexes for the freshly parsed file
+		 * (from the API's objects, which are in memory by now).
+		 *
+		 * @param model   the freshly parsed file
+		 * @param matcher the keywords the registers highlight
+		 */
+		private void buildIndexes(final KMyMoneyFileWithRoot model, final KeywordMatcher matcher) {
+			long start = System.currentTimeMillis();
+			setProgress(50);
+
+			CompactBook compactBook = CompactBook.of(model.getBook());
+			LOGGER.info("buildIndexes: Built " + compactBook + " in " + (System.currentTimeMillis() - start) + " ms" +
+						", ~" + (compactBook.estimateSize() >> 10) + " KB");
+
+			// The registers need the transactions' flags as soon as they are shown
+			BookIndex.register(model.getBook(), compactBook).getTransactionFlags(matcher);
+			setProgress(100);
+		}
+
+		@Override
+		protected void process(final List<LoadPhase> phases) {
+			if ( isCancelled() ) {
+				return;
+			}
+			LoadPhase phase = phases.get(phases.size() - 1);
+			getLoadProgressLabel().setText(phase.getLabel());
+			getLoadProgressBar().setIndeterminate(phase != LoadPhase.INDEXING);
+			getLoadProgressBar().setValue(0);
+		}
+
+		@Override
+		protected void done() {
+			if ( myLoadWorker == this ) {
+				myLoadWorker = null;
+				getLoadProgressDialog().setVisible(false);
+			}
+
+			if ( isCancelled() ) {
+				LOGGER.info("done: Loading '" + myFile.getAbsolutePath() + "' has been cancelled");
+				return;
+			}
+
+			try {
+				setModel(myLoadedModel, get());
+			}
+			catch (InterruptedException | CancellationException e) {
+				LOGGER.info("done: Loading '" + myFile.getAbsolutePath() + "' has been cancelled");
+			}
+			catch (ExecutionException e) {
+				LOGGER.error("done: Cannot load file '" + myFile.getAbsoluteFile() + "'", e.getCause());
+				JOptionPane.showMessageDialog(JKMyMoneyViewer.this, 
+											  Messages_JKMyMoneyViewer.getString("JKMyMoneyViewer.14") + " '" + myFile.getAbsolutePath() + "':\n" + e.getCause(), 
+											  Messages_JKMyMoneyViewer.getString("JKMyMoneyViewer.9"), 
+											  JOptionPane.ERROR_MESSAGE);
+			}
+		}
+	}
+
 	/**
 	 * Our logger for debug- and error-output.
 	 */
 	private static final Logger LOGGER = LoggerFactory.getLogger(JKMyMoneyViewer.class);
 
-	private KMyMoneyFileImpl myModel;
+	private KMyMoneyFileWithRoot myModel;
 
 	private javax.swing.JPanel jContentPane = null;
 
@@ -168,6 +315,10 @@ public class JKMyMoneyViewer extends JFrame {
 	 */
 	private JTabbedPane myTabbedPane = null;
 	private TransactionsPanel transactionsPanel = null;
+	/**
+	 * The sums of the user's dashboard-definition (null if there is none).
+	 */
+	private DashboardPanel dashboardPanel = null;
 	private JMenuBar jJMenuBar = null;
 	/**
 	 * The File-Menu.
@@ -188,6 +339,18 @@ public class JKMyMoneyViewer extends JFrame {
 	 */
 	private JPopupMenu myAccountTreePopupMenu;
 
+	/**
+	 * The file-load currently running in the background (if any).
+	 */
+	private LoadFileWorker myLoadWorker = null;
+
+	/**
+	 * Non-modal dialog showing the progress of {@link #myLoadWorker}.
+	 */
+	private JDialog myLoadProgressDialog = null;
+	private JLabel myLoadProgressLabel = null;
+	private JProgressBar myLoadProgressBar = null;
+
 	/**
 	 * The actions we have on accounts.
 	 */
@@ -300,6 +463,22 @@ public class JKMyMoneyViewer extends JFrame {
 		return accountsTree;
 	}
 
+	/**
+	 * This method initializes dashboardPanel.
+	 *
+	 * @return the dashboard or null if the user has not defined one
+	 * @see DashboardDefinition#getConfiguredFile()
+	 */
+	protected DashboardPanel getDashboardPanel() {
+		if (dashboardPanel == null) {
+			File definitionFile = DashboardDefinition.getConfiguredFile();
+			if (definitionFile != null) {
+				dashboardPanel = new DashboardPanel(definitionFile);
+			}
+		}
+		return dashboardPanel;
+	}
+
 	/**
 	 * This method initializes transactionsPanel.
 	 *
@@ -309,6 +488,9 @@ public class JKMyMoneyViewer extends JFrame {
 		if (myTabbedPane == null) {
 			myTabbedPane = new JTabbedPane();
 			myTabbedPane.addTab(Messages_JKMyMoneyViewer.getString("JKMyMoneyViewer.1"), getTransactionsPanel());
+			if (getDashboardPanel() != null) {
+				myTabbedPane.addTab(Messages_JKMyMoneyViewer.getString("JKMyMoneyViewer.15"), getDashboardPanel());
+			}
 		}
 		return myTabbedPane;
 	}
@@ -512,7 +694,7 @@ public class JKMyMoneyViewer extends JFrame {
 	}
 
 	/**
-	 * @return true if the file was loaded successfully
+	 * @return true if loading the chosen file has been started
 	 */
 	protected boolean loadFile() {
 		int state = getJFileChooser().showOpenDialog(this);
@@ -534,23 +716,99 @@ public class JKMyMoneyViewer extends JFrame {
 	}
 
 	/**
+	 * Start loading the given file in the background.
+	 * The file currently shown stays usable until the new one
+	 * is completely loaded. A load that is still running is cancelled.
+	 *
 	 * @param f the file to load.
-	 * @return true if the file was loaded successfully
+	 * @return true if loading the file has been started
 	 */
 	public boolean loadFile(final File f) {
-		try {
-			setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-			setModel(createModelFromFile(f));
-			return true;
+		if ( f == null ) {
+			throw new IllegalArgumentException("argument <f> is null");
 		}
-		catch (Exception e1) {
-			LOGGER.error("loadFile: Cannot load file '" + f.getAbsoluteFile() + "'", e1);
-			e1.printStackTrace();
+
+		cancelLoadFile();
+
+		final LoadFileWorker worker = new LoadFileWorker(f);
+		worker.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(final PropertyChangeEvent evt) {
+				if ( "progress".equals(evt.getPropertyName()) && 
+					 myLoadWorker == worker ) {
+					getLoadProgressBar().setValue((Integer) evt.getNewValue());
+				}
+			}
+		});
+		myLoadWorker = worker;
+
+		getLoadProgressDialog().setTitle(Messages_JKMyMoneyViewer.getString("JKMyMoneyViewer.9") + " " + f.getName());
+		getLoadProgressLabel().setText(LoadPhase.PARSING.getLabel());
+		getLoadProgressBar().setIndeterminate(true);
+		getLoadProgressDialog().setLocationRelativeTo(this);
+		getLoadProgressDialog().setVisible(true);
+
+		worker.execute();
+		return true;
+	}
+
+	/**
+	 * Cancel the file-load running in the background (if any).
+	 * The file currently shown is kept.
+	 */
+	public void cancelLoadFile() {
+		LoadFileWorker worker = myLoadWorker;
+		if ( worker == null ) {
+			return;
 		}
-		finally {
-			setCursor(Cursor.getDefaultCursor());
+
+		myLoadWorker = null;
+		worker.cancel(true);
+		getLoadProgressDialog().setVisible(false);
+	}
+
+	/**
+	 * This method initializes the dialog showing the progress of loading a file.
+	 *
+	 * @return javax.swing.JDialog
+	 */
+	protected JDialog getLoadProgressDialog() {
+		if ( myLoadProgressDialog == null ) {
+			final int border = Const.PANE_BORDER_DEFAULT;
+			myLoadProgressDialog = new JDialog(this, false);
+			myLoadProgressDialog.setDefaultCloseOperation(javax.swing.WindowConstants.DO_NOTHING_ON_CLOSE);
+
+			JPanel panel = new JPanel(new BorderLayout(border, border));
+			panel.setBorder(BorderFactory.createEmptyBorder(border, border, border, border));
+			panel.add(getLoadProgressLabel(), BorderLayout.NORTH);
+			panel.add(getLoadProgressBar(), BorderLayout.CENTER);
+
+			JButton cancelButton = new JButton(Messages_JKMyMoneyViewer.getString("JKMyMoneyViewer.13"));
+			cancelButton.addActionListener(new ActionListener() {
+				public void actionPerformed(final ActionEvent e) {
+					cancelLoadFile();
+				}
+			});
+			panel.add(cancelButton, BorderLayout.EAST);
+
+			myLoadProgressDialog.setContentPane(panel);
+			myLoadProgressDialog.pack();
 		}
-		return false;
+		return myLoadProgressDialog;
+	}
+
+	private JLabel getLoadProgressLabel() {
+		if ( myLoadProgressLabel == null ) {
+			myLoadProgressLabel = new JLabel(LoadPhase.PARSING.getLabel());
+		}
+		return myLoadProgressLabel;
+	}
+
+	private JProgressBar getLoadProgressBar() {
+		if ( myLoadProgressBar == null ) {
+			myLoadProgressBar = new JProgressBar(0, 100);
+			myLoadProgressBar.setPreferredSize(new Dimension(Const.SCROLL_PANE_WIDTH_DEFAULT, myLoadProgressBar.getPreferredSize().height));
+		}
+		return myLoadProgressBar;
 	}
 
 	/**
@@ -563,35 +821,93 @@ public class JKMyMoneyViewer extends JFrame {
 	/**
 	 * @return the file we operate on.
 	 */
-	protected KMyMoneyFileImpl getModel() {
+	protected KMyMoneyFileWithRoot getModel() {
 		return myModel;
 	}
 
-	public void setModel(final KMyMoneyFile model) throws IOException {
+	/**
+	 * @param model the (already loaded) file we operate on.
+	 *              It is not read from disk again.
+	 */
+	public void setModel(final KMyMoneyFile model) {
 		if ( model == null ) {
 			throw new IllegalArgumentException("argument <model> is null");
 		}
 
-		myModel = new KMyMoneyFileImpl( model );
-		getAccountsTree().setModel(new KMyMoneyAccountsTreeModel(myModel));
-		setSelectedAccount(null);
-		setTitle(TITLE);
+		setModel(wrapModel(model));
 	}
 	
 	/**
 	 * @param model the file we operate on.
 	 */
-	public void setModel(final KMyMoneyFileImpl model) {
+	public void setModel(final KMyMoneyFileWithRoot model) {
+		if ( model == null ) {
+			throw new IllegalArgumentException("argument <model> is null");
+		}
+
+		setModel(model, new KMyMoneyAccountsTreeModel(model));
+	}
+
+	/**
+	 * @param model an already loaded file
+	 * @return the file itself if it already provides a root-account,
+	 *         else an adapter around it (without parsing the file again)
+	 */
+	protected static KMyMoneyFileWithRoot wrapModel(final KMyMoneyFile model) {
+		if ( model instanceof KMyMoneyFileWithRoot ) {
+			return (KMyMoneyFileWithRoot) model;
+		}
+
+		return new KMyMoneyFileAdapter(model);
+	}
+
+	/**
+	 * Swap in a completely loaded file together with its
+	 * (already built) account-tree. Must be called on the EDT.
+	 *
+	 * @param model     the file we operate on.
+	 * @param treeModel the account-tree of that file
+	 */
+	protected void setModel(final KMyMoneyFileWithRoot model, final KMyMoneyAccountsTreeModel treeModel) {
 		if ( model == null ) {
 			throw new IllegalArgumentException("argument <model> is null");
 		}
 
+		if ( treeModel == null ) {
+			throw new IllegalArgumentException("argument <treeModel> is null");
+		}
+
 		myModel = model;
-		getAccountsTree().setModel(new KMyMoneyAccountsTreeModel(myModel));
+		if ( model.getBook() instanceof BookIndex.Holder && 
+			 BookIndex.peek(model.getBook()) == null ) {
+			// A file that has been loaded without the load-worker
+			buildIndexInBackground(model.getBook());
+		}
+		getAccountsTree().setModel(treeModel);
 		setSelectedAccount(null);
+		if (getDashboardPanel() != null) {
+			// calculate the sums right away, not only when the tab is shown
+			getDashboardPanel().setBook(model.getBook());
+		}
 		setTitle(TITLE);
 	}
 
+	/**
+	 * Build the index of a file (and the flags of its transactions)
+	 * off the EDT, so that the registers can use it once it is there.
+	 *
+	 * @param book a loaded file
+	 */
+	private static void buildIndexInBackground(final KMyMoneyFile book) {
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				BookIndex.of(book).getTransactionFlags(HighlightRules.getConfigured().getMatcher());
+			}
+		}, "BookIndex-builder");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
 	/**
 	 * @return the accountTreePopupMenu
 	 */
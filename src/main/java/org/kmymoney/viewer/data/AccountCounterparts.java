@@ -0,0 +1,158 @@
+package org.kmymoney.viewer.data;
+
+import java.util.Arrays;
+
+/**
+ * For every account of a {@link CompactBook}: the accounts it shares transactions
+ * with (its "counterparts", the account itself included), along with the sums of
+ * the positive and of the other values of the counterparts' splits in these
+ * transactions (every transaction counted once), built once for the whole book.
+ * <br>
+ * That way, the summary of all the transactions of an account (which
+ * accounts they touch and what they add up to per account) does not
+ * have to look at them one by one.
+ */
+public final class AccountCounterparts {
+
+	// Account a: its counterparts at counterpartStart[a] .. counterpartStart[a + 1] - 1
+	// (ascending), with the sums of their values in the account's transactions
+	private final int[] counterpartStart;
+	private final int[] counterpart;
+	private final long[] inflow;
+	private final long[] outflow;
+
+	// ---------------------------------------------------------------
+
+	private AccountCounterparts(final int[] counterpartStart, final int[] counterpart,
+								final long[] inflow, final long[] outflow) {
+		this.counterpartStart = counterpartStart;
+		this.counterpart = counterpart;
+		this.inflow = inflow;
+		this.outflow = outflow;
+	}
+
+	/**
+	 * @param book a compact book
+	 * @return the counterparts of all accounts of the book
+	 */
+	public static AccountCounterparts of(final CompactBook book) {
+		if ( book == null ) {
+			throw new IllegalArgumentException("argument <book> is null");
+		}
+
+		int nofAccts = book.getAccountCount();
+		int[] start = new int[nofAccts + 1];
+		int[] accts = new int[nofAccts];
+		long[] inflows = new long[nofAccts];
+		long[] outflows = new long[nofAccts];
+
+		// Scratch per counterpart (seen is the account it has last been seen for)
+		int[] seen = new int[nofAccts];
+		Arrays.fill(seen, -1);
+		long[] acctInflow = new long[nofAccts];
+		long[] acctOutflow = new long[nofAccts];
+		int[] found = new int[nofAccts];
+
+		int n = 0;
+		for ( int acct = 0; acct < nofAccts; acct++ ) {
+			start[acct] = n;
+			int nofFound = 0;
+			int lastTrx = -1;
+			for ( int pos = book.getAccountSplitStart(acct); pos < book.getAccountSplitEnd(acct); pos++ ) {
+				// (the account's splits are sorted by transaction)
+				int trx = book.getSplitTransaction(book.getAccountSplitAt(pos));
+				if ( trx == lastTrx ) {
+					continue;
+				}
+				lastTrx = trx;
+				for ( int splt = book.getTransactionSplitStart(trx); splt < book.getTransactionSplitEnd(trx); splt++ ) {
+					int other = book.getSplitAccount(splt);
+					if ( other == CompactBook.NO_ACCOUNT ) {
+						continue;
+					}
+					if ( seen[other] != acct ) {
+						seen[other] = acct;
+						acctInflow[other] = 0;
+						acctOutflow[other] = 0;
+						found[nofFound++] = other;
+					}
+					long value = book.getSplitValue(splt);
+					if ( value > 0 ) {
+						acctInflow[other] += value;
+					} else {
+						acctOutflow[other] += value;
+					}
+				}
+			}
+
+			Arrays.sort(found, 0, nofFound);
+			if ( n + nofFound > accts.length ) {
+				int size = Math.max(2 * accts.length, n + nofFound);
+				accts = Arrays.copyOf(accts, size);
+				inflows = Arrays.copyOf(inflows, size);
+				outflows = Arrays.copyOf(outflows, size);
+			}
+			for ( int i = 0; i < nofFound; i++ ) {
+				accts[n] = found[i];
+				inflows[n] = acctInflow[found[i]];
+				outflows[n] = acctOutflow[found[i]];
+				n++;
+			}
+		}
+		start[nofAccts] = n;
+
+		return new AccountCounterparts(start,
+									   Arrays.copyOf(accts, n),
+									   Arrays.copyOf(inflows, n),
+									   Arrays.copyOf(outflows, n));
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * @param acctOrd an account-ordinal
+	 * @return the number of accounts the account shares transactions with
+	 *         (the account itself included, if it has any splits)
+	 */
+	public int getCounterpartCount(final int acctOrd) {
+		return counterpartStart[acctOrd + 1] - counterpartStart[acctOrd];
+	}
+
+	/**
+	 * @param acctOrd an account-ordinal
+	 * @param i       0 .. {@link #getCounterpartCount(int)} - 1
+	 * @return the account-ordinal of the i-th counterpart (ascending)
+	 */
+	public int getCounterpart(final int acctOrd, final int i) {
+		return counterpart[counterpartStart[acctOrd] + i];
+	}
+
+	/**
+	 * @param acctOrd        an account-ordinal
+	 * @param counterpartOrd another account-ordinal (or the same one)
+	 * @return the sums of the positive and of the other values (in units) of the
+	 *         counterpart's splits in the transactions of the account
+	 *         (zeros if they do not share any)
+	 */
+	public long[] getValueSums(final int acctOrd, final int counterpartOrd) {
+		int pos = Arrays.binarySearch(counterpart, counterpartStart[acctOrd], counterpartStart[acctOrd + 1], counterpartOrd);
+		if ( pos < 0 ) {
+			return new long[2];
+		}
+		return new long[] { inflow[pos], outflow[pos] };
+	}
+
+	/**
+	 * @return the approximate size in bytes
+	 */
+	public long estimateSize() {
+		return 4L * counterpartStart.length + 20L * counterpart.length;
+	}
+
+	@Override
+	public String toString() {
+		return "AccountCounterparts [" + (counterpartStart.length - 1) + " accounts, "
+				+ counterpart.length + " counterparts, ~" + (estimateSize() >> 10) + " KB]";
+	}
+
+}
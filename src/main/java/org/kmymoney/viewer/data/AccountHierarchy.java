@@ -0,0 +1,219 @@
+package org.kmymoney.viewer.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyFile;
+import org.kmymoney.base.basetypes.complex.KMMComplAcctID;
+
+/**
+ * An immutable index of the account-tree of a KMyMoney file,
+ * built once by walking the accounts top-down.
+ * <br>
+ * Every account is a node, addressed by its ordinal. Node {@link #ROOT}
+ * is a virtual root above the top-level accounts (it has no account),
+ * all other nodes are numbered in depth-first pre-order, so that the
+ * children of a node keep the order the KMyMoney API returns them in.
+ * <br>
+ * Parent, children and the position of a node among its siblings
+ * are all looked up in constant time. The accounts themselves
+ * are not modified.
+ * <br>
+ * Because of the pre-order, the subtree of a node n consists of the nodes
+ * n .. {@link #getSubtreeEnd(int)} - 1 (the node's numbers on entering
+ * and leaving it on a walk around the tree), so a whole subtree is
+ * handled as one range of nodes.
+ */
+public final class AccountHierarchy {
+
+	public static final int ROOT = 0;
+
+	public static final int NO_NODE = -1;
+
+	// ---------------------------------------------------------------
+
+	private final KMyMoneyAccount[] accounts;
+	private final int[] parent;
+	private final int[] indexInParent;
+
+	// The subtree of node n: n .. subtreeEnd[n] - 1
+	private final int[] subtreeEnd;
+
+	// Children of node n: children[childStart[n] .. childStart[n + 1] - 1]
+	private final int[] childStart;
+	private final int[] children;
+
+	private final Map<KMyMoneyAccount, Integer> nodeByAccount;
+	private final Map<KMMComplAcctID, Integer> nodeByID;
+
+	// ---------------------------------------------------------------
+
+	private AccountHierarchy(final KMyMoneyAccount[] accounts, final int[] parent, final int[] indexInParent,
+			                 final int[] subtreeEnd, final int[] childStart, final int[] children,
+			                 final Map<KMyMoneyAccount, Integer> nodeByAccount,
+			                 final Map<KMMComplAcctID, Integer> nodeByID) {
+		this.accounts = accounts;
+		this.parent = parent;
+		this.indexInParent = indexInParent;
+		this.subtreeEnd = subtreeEnd;
+		this.childStart = childStart;
+		this.children = children;
+		this.nodeByAccount = nodeByAccount;
+		this.nodeByID = nodeByID;
+	}
+
+	/**
+	 * @param book a loaded file
+	 * @return the account-tree of the file
+	 */
+	public static AccountHierarchy of(final KMyMoneyFile book) {
+		if ( book == null ) {
+			throw new IllegalArgumentException("argument <book> is null");
+		}
+
+		List<KMyMoneyAccount> accounts = new ArrayList<KMyMoneyAccount>();
+		List<Integer> parents = new ArrayList<Integer>();
+		accounts.add(null);
+		parents.add(NO_NODE);
+		for ( KMyMoneyAccount topAcct : book.getTopAccounts() ) {
+			addNode(topAcct, ROOT, accounts, parents);
+		}
+
+		int nofNodes = accounts.size();
+		int[] parent = new int[nofNodes];
+		for ( int n = 0; n < nofNodes; n++ ) {
+			parent[n] = parents.get(n);
+		}
+
+		// Children (counting sort by parent; pre-order keeps the siblings' order)
+		int[] childStart = new int[nofNodes + 1];
+		for ( int n = 1; n < nofNodes; n++ ) {
+			childStart[parent[n] + 1]++;
+		}
+		for ( int n = 0; n < nofNodes; n++ ) {
+			childStart[n + 1] += childStart[n];
+		}
+		int[] children = new int[nofNodes - 1];
+		int[] indexInParent = new int[nofNodes];
+		indexInParent[ROOT] = NO_NODE;
+		int[] fill = Arrays.copyOf(childStart, nofNodes);
+		for ( int n = 1; n < nofNodes; n++ ) {
+			int pos = fill[parent[n]]++;
+			children[pos] = n;
+			indexInParent[n] = pos - childStart[parent[n]];
+		}
+
+		// Subtrees (a node's descendants follow it in pre-order,
+		// so sizes add up from the last node backwards)
+		int[] subtreeEnd = new int[nofNodes];
+		for ( int n = nofNodes - 1; n >= 0; n-- ) {
+			subtreeEnd[n] = Math.max(subtreeEnd[n], n + 1);
+			if ( n > ROOT ) {
+				subtreeEnd[parent[n]] = Math.max(subtreeEnd[parent[n]], subtreeEnd[n]);
+			}
+		}
+
+		Map<KMyMoneyAccount, Integer> nodeByAccount = new IdentityHashMap<KMyMoneyAccount, Integer>(nofNodes);
+		Map<KMMComplAcctID, Integer> nodeByID = new HashMap<KMMComplAcctID, Integer>(2 * nofNodes);
+		for ( int n = 1; n < nofNodes; n++ ) {
+			nodeByAccount.put(accounts.get(n), n);
+			nodeByID.put(accounts.get(n).getID(), n);
+		}
+
+		return new AccountHierarchy(accounts.toArray(new KMyMoneyAccount[nofNodes]),
+				                    parent, indexInParent, subtreeEnd, childStart, children,
+				                    nodeByAccount, nodeByID);
+	}
+
+	private static void addNode(final KMyMoneyAccount acct, final int parentNode,
+			                    final List<KMyMoneyAccount> accounts, final List<Integer> parents) {
+		int node = accounts.size();
+		accounts.add(acct);
+		parents.add(parentNode);
+
+		Collection<? extends KMyMoneyAccount> subAccts = acct.getChildren();
+		for ( KMyMoneyAccount subAcct : subAccts ) {
+			addNode(subAcct, node, accounts, parents);
+		}
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * @return the number of nodes (including {@link #ROOT})
+	 */
+	public int getNodeCount() {
+		return accounts.length;
+	}
+
+	/**
+	 * @return the account of the node (null for {@link #ROOT})
+	 */
+	public KMyMoneyAccount getAccount(final int node) {
+		return accounts[node];
+	}
+
+	/**
+	 * @return the node of the account or {@link #NO_NODE} if it is not part of the tree
+	 */
+	public int getNode(final KMyMoneyAccount acct) {
+		Integer node = nodeByAccount.get(acct);
+		return node == null ? NO_NODE : node;
+	}
+
+	/**
+	 * @return the node of the account with the ID or {@link #NO_NODE} if it is not part of the tree
+	 */
+	public int getNode(final KMMComplAcctID acctID) {
+		Integer node = nodeByID.get(acctID);
+		return node == null ? NO_NODE : node;
+	}
+
+	/**
+	 * @return the parent node or {@link #NO_NODE} for {@link #ROOT}
+	 */
+	public int getParent(final int node) {
+		return parent[node];
+	}
+
+	public int getChildCount(final int node) {
+		return childStart[node + 1] - childStart[node];
+	}
+
+	/**
+	 * @return the index-th child of the node
+	 */
+	public int getChild(final int node, final int index) {
+		if ( index < 0 || index >= getChildCount(node) ) {
+			throw new IndexOutOfBoundsException("node " + node + " has no child no. " + index);
+		}
+		return children[childStart[node] + index];
+	}
+
+	/**
+	 * @return the position of the node among its siblings or {@link #NO_NODE} for {@link #ROOT}
+	 */
+	public int getIndexInParent(final int node) {
+		return indexInParent[node];
+	}
+
+	/**
+	 * @return the node after the last descendant of the node
+	 *         (the subtree of the node consists of the nodes node .. getSubtreeEnd(node) - 1)
+	 */
+	public int getSubtreeEnd(final int node) {
+		return subtreeEnd[node];
+	}
+
+	@Override
+	public String toString() {
+		return "AccountHierarchy [" + (getNodeCount() - 1) + " accounts]";
+	}
+
+}
@@ -0,0 +1,156 @@
+package org.kmymoney.viewer.data;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * For every account of a {@link CompactBook}: the set of transactions
+ * that have a split in the account or in one of its descendants
+ * (cf. {@link TransactionBitmap}), built once for the whole book.
+ * <br>
+ * As the transactions of the compact book are sorted by date,
+ * the transactions of a date-range are a range of ordinals,
+ * cf. {@link #getFirstTransaction(LocalDate)}.
+ */
+public final class AccountTransactionIndex {
+
+	private final CompactBook book;
+
+	// Per account (ordinal): the transactions of its subtree
+	private final TransactionBitmap[] subtreeTransactions;
+
+	// ---------------------------------------------------------------
+
+	private AccountTransactionIndex(final CompactBook book, final TransactionBitmap[] subtreeTransactions) {
+		this.book = book;
+		this.subtreeTransactions = subtreeTransactions;
+	}
+
+	/**
+	 * @param book a compact book
+	 * @return the index of the book
+	 */
+	public static AccountTransactionIndex of(final CompactBook book) {
+		if ( book == null ) {
+			throw new IllegalArgumentException("argument <book> is null");
+		}
+
+		int nofAccts = book.getAccountCount();
+		int nofTrx = book.getTransactionCount();
+
+		// Children before their parents: count the depth of each account
+		int[] depth = new int[nofAccts];
+		int maxDepth = 0;
+		for ( int acct = 0; acct < nofAccts; acct++ ) {
+			int d = 0;
+			for ( int p = book.getAccountParent(acct); p != CompactBook.NO_PARENT && d <= nofAccts; p = book.getAccountParent(p) ) {
+				d++;
+			}
+			depth[acct] = d;
+			maxDepth = Math.max(maxDepth, d);
+		}
+
+		// The account's own transactions (its splits are sorted by
+		// split-ordinal and therefore by transaction-ordinal as well)...
+		TransactionBitmap[] bitmaps = new TransactionBitmap[nofAccts];
+		int[] buffer = new int[16];
+		for ( int acct = 0; acct < nofAccts; acct++ ) {
+			int n = 0;
+			int lastTrx = -1;
+			for ( int pos = book.getAccountSplitStart(acct); pos < book.getAccountSplitEnd(acct); pos++ ) {
+				int trx = book.getSplitTransaction(book.getAccountSplitAt(pos));
+				if ( trx == lastTrx ) {
+					continue;
+				}
+				lastTrx = trx;
+				if ( n == buffer.length ) {
+					buffer = Arrays.copyOf(buffer, 2 * n);
+				}
+				buffer[n++] = trx;
+			}
+			bitmaps[acct] = TransactionBitmap.of(buffer, n, nofTrx);
+		}
+
+		// ...plus those of its descendants, deepest accounts first
+		for ( int d = maxDepth; d > 0; d-- ) {
+			for ( int acct = 0; acct < nofAccts; acct++ ) {
+				if ( depth[acct] == d ) {
+					int parent = book.getAccountParent(acct);
+					bitmaps[parent] = bitmaps[parent].or(bitmaps[acct], nofTrx);
+				}
+			}
+		}
+
+		return new AccountTransactionIndex(book, bitmaps);
+	}
+
+	// ---------------------------------------------------------------
+
+	public CompactBook getBook() {
+		return book;
+	}
+
+	/**
+	 * @param acctOrd an account-ordinal
+	 * @return the transactions with a split in the account or one of its descendants
+	 */
+	public TransactionBitmap getSubtreeTransactions(final int acctOrd) {
+		return subtreeTransactions[acctOrd];
+	}
+
+	/**
+	 * @param minDate a date or null
+	 * @return the first transaction-ordinal posted on or after the date
+	 *         (0 for null, {@link CompactBook#getTransactionCount()} if there is none)
+	 */
+	public int getFirstTransaction(final LocalDate minDate) {
+		if ( minDate == null ) {
+			return 0;
+		}
+		return getFirstTransactionAfter(minDate.toEpochDay() - 1);
+	}
+
+	/**
+	 * @param maxDate a date or null
+	 * @return the first transaction-ordinal posted after the date
+	 *         ({@link CompactBook#getTransactionCount()} for null or if there is none)
+	 */
+	public int getEndTransaction(final LocalDate maxDate) {
+		if ( maxDate == null ) {
+			return book.getTransactionCount();
+		}
+		return getFirstTransactionAfter(maxDate.toEpochDay());
+	}
+
+	private int getFirstTransactionAfter(final long epochDay) {
+		int lo = 0;
+		int hi = book.getTransactionCount();
+		while ( lo < hi ) {
+			int mid = (lo + hi) >>> 1;
+			if ( book.getTransactionDate(mid) <= epochDay ) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @return the approximate size in bytes
+	 */
+	public long estimateSize() {
+		long size = 0;
+		for ( TransactionBitmap bitmap : subtreeTransactions ) {
+			size += bitmap.estimateSize();
+		}
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "AccountTransactionIndex [" + subtreeTransactions.length + " accounts, ~"
+				+ (estimateSize() >> 10) + " KB]";
+	}
+
+}
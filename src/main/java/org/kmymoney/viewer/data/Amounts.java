@@ -0,0 +1,90 @@
+package org.kmymoney.viewer.data;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import xyz.schnorxoborx.base.numbers.FixedPointNumber;
+
+/**
+ * Helpers for amounts that are kept as primitive fixed-point longs
+ * ("units") instead of {@link FixedPointNumber}-objects.
+ * <br>
+ * One unit is 10^-{@value #SCALE} of the amount's currency/security,
+ * which is precise enough for all amounts KMyMoney stores for
+ * currencies and (fractional) shares of securities.
+ */
+public final class Amounts {
+
+	/**
+	 * Number of decimal places of one unit.
+	 */
+	public static final int SCALE = 6;
+
+	/**
+	 * Number of units of an amount of 1.
+	 */
+	public static final long UNITS_PER_ONE = 1000000L;
+
+	private Amounts() {
+	}
+
+	/**
+	 * @param number the amount to convert (may be null)
+	 * @return the amount in units (0 for null)
+	 */
+	public static long toUnits(final FixedPointNumber number) {
+		if ( number == null ) {
+			return 0;
+		}
+
+		return toUnits(number.getBigDecimal());
+	}
+
+	/**
+	 * @param number the amount to convert (may be null)
+	 * @return the amount in units (0 for null)
+	 */
+	public static long toUnits(final BigDecimal number) {
+		if ( number == null ) {
+			return 0;
+		}
+
+		return number.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValue();
+	}
+
+	/**
+	 * @param number an amount (may be null)
+	 * @return whether the amount is exactly a whole number of units
+	 *         (i.e. {@link #toUnits(FixedPointNumber)} does not round it)
+	 */
+	public static boolean isExact(final FixedPointNumber number) {
+		return number == null || isExact(number.getBigDecimal());
+	}
+
+	/**
+	 * @param number an amount (may be null)
+	 * @return whether the amount is exactly a whole number of units
+	 */
+	public static boolean isExact(final BigDecimal number) {
+		return number == null || 
+			   number.scale() <= SCALE ||
+			   number.stripTrailingZeros().scale() <= SCALE;
+	}
+
+	/**
+	 * @param units an amount in units
+	 * @return the same amount as a BigDecimal
+	 */
+	public static BigDecimal toBigDecimal(final long units) {
+		return BigDecimal.valueOf(units, SCALE);
+	}
+
+	/**
+	 * @param units an amount in units
+	 * @return the same amount as a FixedPointNumber
+	 */
+	public static FixedPointNumber toFixedPointNumber(final long units) {
+		return new FixedPointNumber(toBigDecimal(units));
+	}
+
+}
@@ -0,0 +1,312 @@
+package org.kmymoney.viewer.data;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyFile;
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The indexes the viewer keeps for a loaded KMyMoney file
+ * (in addition to the file's own object-graph).
+ * <br>
+ * The index is kept by the file itself (cf. {@link Holder}), so that both are
+ * dropped together. It is normally built while the file is being loaded
+ * (cf. {@link #register(KMyMoneyFile, CompactBook)}); if it has not,
+ * {@link #of(KMyMoneyFile)} builds it on first use.
+ * A file that cannot keep an index has none of its own:
+ * {@link #peek(KMyMoneyFile)} never finds one for it.
+ */
+public final class BookIndex {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BookIndex.class);
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * A loaded file that keeps its own index.
+	 */
+	public interface Holder {
+
+		/**
+		 * @return the index of the file or null if it has not been built yet
+		 */
+		BookIndex getBookIndex();
+
+		/**
+		 * @param index the index of the file
+		 */
+		void setBookIndex(BookIndex index);
+
+	}
+
+	// ---------------------------------------------------------------
+
+	// The file we index
+	private final KMyMoneyFile book;
+
+	// The compact copy of the file
+	private final CompactBook compactBook;
+
+	// The account-tree of the file (built on first use)
+	private volatile AccountHierarchy accountHierarchy = null;
+
+	// The transactions per account-subtree (built on first use)
+	private volatile AccountTransactionIndex accountTransactions = null;
+
+	// The accounts sharing transactions with each account (built on first use)
+	private volatile AccountCounterparts accountCounterparts = null;
+
+	// The totals per account and period (built on first use)
+	private volatile PeriodTotals periodTotals = null;
+
+	// The flags of the transactions (computed on first use and whenever the keywords change)
+	private volatile TransactionFlags transactionFlags = null;
+
+	// The API's objects per ordinal of the compact book (bound on first use)
+	private volatile KMyMoneyAccount[] accounts = null;
+	private volatile KMyMoneyTransaction[] transactions = null;
+
+	// ---------------------------------------------------------------
+
+	private BookIndex(final KMyMoneyFile book, final CompactBook compactBook) {
+		this.book = book;
+		this.compactBook = compactBook;
+	}
+
+	/**
+	 * @param book        a loaded file
+	 * @param compactBook the compact copy of exactly that file
+	 * @return the index of the file (kept by the file if it is a {@link Holder})
+	 */
+	public static BookIndex register(final KMyMoneyFile book, final CompactBook compactBook) {
+		if ( book == null ) {
+			throw new IllegalArgumentException("argument <book> is null");
+		}
+
+		if ( compactBook == null ) {
+			throw new IllegalArgumentException("argument <compactBook> is null");
+		}
+
+		BookIndex index = new BookIndex(book, compactBook);
+		if ( book instanceof Holder ) {
+			((Holder) book).setBookIndex(index);
+		}
+		return index;
+	}
+
+	/**
+	 * @param book a loaded file
+	 * @return the index of the file (built now if it has not been built yet;
+	 *         for a file that is not a {@link Holder}, every call builds a new one)
+	 */
+	public static BookIndex of(final KMyMoneyFile book) {
+		if ( book == null ) {
+			throw new IllegalArgumentException("argument <book> is null");
+		}
+
+		synchronized ( book ) {
+			BookIndex index = peek(book);
+			if ( index == null ) {
+				long start = System.currentTimeMillis();
+				index = register(book, CompactBook.of(book));
+				LOGGER.debug("of: Built index on demand in " + (System.currentTimeMillis() - start) + " ms: " + index.getCompactBook());
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * @param book a loaded file
+	 * @return the index of the file or null if it has not been built yet
+	 */
+	public static BookIndex peek(final KMyMoneyFile book) {
+		return book instanceof Holder ? ((Holder) book).getBookIndex() : null;
+	}
+
+	// ---------------------------------------------------------------
+
+	public KMyMoneyFile getBook() {
+		return book;
+	}
+
+	public CompactBook getCompactBook() {
+		return compactBook;
+	}
+
+	public AccountHierarchy getAccountHierarchy() {
+		if ( accountHierarchy == null ) {
+			synchronized ( this ) {
+				if ( accountHierarchy == null ) {
+					long start = System.currentTimeMillis();
+					accountHierarchy = AccountHierarchy.of(book);
+					LOGGER.debug("getAccountHierarchy: Built " + accountHierarchy + " in " + (System.currentTimeMillis() - start) + " ms");
+				}
+			}
+		}
+		return accountHierarchy;
+	}
+
+	public AccountTransactionIndex getAccountTransactionIndex() {
+		if ( accountTransactions == null ) {
+			synchronized ( this ) {
+				if ( accountTransactions == null ) {
+					long start = System.currentTimeMillis();
+					accountTransactions = AccountTransactionIndex.of(compactBook);
+					LOGGER.debug("getAccountTransactionIndex: Built " + accountTransactions + " in " + (System.currentTimeMillis() - start) + " ms");
+				}
+			}
+		}
+		return accountTransactions;
+	}
+
+	public AccountCounterparts getAccountCounterparts() {
+		if ( accountCounterparts == null ) {
+			synchronized ( this ) {
+				if ( accountCounterparts == null ) {
+					long start = System.currentTimeMillis();
+					accountCounterparts = AccountCounterparts.of(compactBook);
+					LOGGER.debug("getAccountCounterparts: Built " + accountCounterparts + " in " + (System.currentTimeMillis() - start) + " ms");
+				}
+			}
+		}
+		return accountCounterparts;
+	}
+
+	/**
+	 * @return the totals per account and period (with days for the year the index has been built in)
+	 */
+	public PeriodTotals getPeriodTotals() {
+		if ( periodTotals == null ) {
+			synchronized ( this ) {
+				if ( periodTotals == null ) {
+					long start = System.currentTimeMillis();
+					periodTotals = PeriodTotals.of(compactBook, LocalDate.now());
+					LOGGER.debug("getPeriodTotals: Built " + periodTotals + " in " + (System.currentTimeMillis() - start) + " ms");
+				}
+			}
+		}
+		return periodTotals;
+	}
+
+	/**
+	 * @param matcher the keywords to look for in the memos
+	 * @return the flags of all transactions of the file
+	 */
+	public TransactionFlags getTransactionFlags(final KeywordMatcher matcher) {
+		TransactionFlags flags = transactionFlags;
+		if ( flags == null || flags.getMatcher() != matcher ) {
+			synchronized ( this ) {
+				flags = transactionFlags;
+				if ( flags == null || flags.getMatcher() != matcher ) {
+					long start = System.currentTimeMillis();
+					flags = TransactionFlags.of(compactBook, matcher);
+					transactionFlags = flags;
+					LOGGER.debug("getTransactionFlags: Computed flags of " + compactBook.getTransactionCount() + " transactions in " + (System.currentTimeMillis() - start) + " ms");
+				}
+			}
+		}
+		return flags;
+	}
+
+	/**
+	 * Like {@link #getTransactionFlags(KeywordMatcher)}, but never computes them
+	 * (e.g. for the event-dispatch-thread).
+	 * 
+	 * @param matcher the keywords to look for in the memos
+	 * @return the flags of all transactions of the file or null 
+	 *         if they have not been computed for these keywords
+	 */
+	public TransactionFlags peekTransactionFlags(final KeywordMatcher matcher) {
+		TransactionFlags flags = transactionFlags;
+		return flags == null || flags.getMatcher() != matcher ? null : flags;
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * @param acctOrd an account-ordinal of the compact book
+	 * @return the account of the file (null if the file does not have it)
+	 */
+	public KMyMoneyAccount getAccount(final int acctOrd) {
+		return getAccounts()[acctOrd];
+	}
+
+	/**
+	 * @param acct an account of the file
+	 * @return its ordinal in the compact book or {@link CompactBook#NO_ACCOUNT}
+	 */
+	public int getAccountOrdinal(final KMyMoneyAccount acct) {
+		return compactBook.getAccountOrdinal(acct.getID().toString());
+	}
+
+	/**
+	 * @param trxOrd a transaction-ordinal of the compact book
+	 * @return the transaction of the file (null if the file does not have it)
+	 */
+	public KMyMoneyTransaction getTransaction(final int trxOrd) {
+		return getTransactions()[trxOrd];
+	}
+
+	/**
+	 * @param spltOrd a split-ordinal of the compact book
+	 * @return the split of the file (null if the file does not have it)
+	 */
+	public KMyMoneyTransactionSplit getSplit(final int spltOrd) {
+		int trxOrd = compactBook.getSplitTransaction(spltOrd);
+		KMyMoneyTransaction trx = getTransaction(trxOrd);
+		if ( trx == null ) {
+			return null;
+		}
+
+		// The compact book keeps the splits in the order of the transaction
+		List<? extends KMyMoneyTransactionSplit> splits = trx.getSplits();
+		int pos = spltOrd - compactBook.getTransactionSplitStart(trxOrd);
+		return pos < splits.size() ? splits.get(pos) : null;
+	}
+
+	private KMyMoneyAccount[] getAccounts() {
+		if ( accounts == null ) {
+			synchronized ( this ) {
+				if ( accounts == null ) {
+					AccountHierarchy hier = getAccountHierarchy();
+					KMyMoneyAccount[] result = new KMyMoneyAccount[compactBook.getAccountCount()];
+					for ( int node = AccountHierarchy.ROOT + 1; node < hier.getNodeCount(); node++ ) {
+						KMyMoneyAccount acct = hier.getAccount(node);
+						int acctOrd = getAccountOrdinal(acct);
+						if ( acctOrd != CompactBook.NO_ACCOUNT ) {
+							result[acctOrd] = acct;
+						}
+					}
+					accounts = result;
+				}
+			}
+		}
+		return accounts;
+	}
+
+	private KMyMoneyTransaction[] getTransactions() {
+		if ( transactions == null ) {
+			synchronized ( this ) {
+				if ( transactions == null ) {
+					long start = System.currentTimeMillis();
+					KMyMoneyTransaction[] result = new KMyMoneyTransaction[compactBook.getTransactionCount()];
+					for ( KMyMoneyTransaction trx : book.getTransactions() ) {
+						int trxOrd = compactBook.getTransactionOrdinal(trx.getID().toString());
+						if ( trxOrd >= 0 ) {
+							result[trxOrd] = trx;
+						}
+					}
+					transactions = result;
+					LOGGER.debug("getTransactions: Bound " + result.length + " transactions in " + (System.currentTimeMillis() - start) + " ms");
+				}
+			}
+		}
+		return transactions;
+	}
+
+}
@@ -0,0 +1,627 @@
+package org.kmymoney.viewer.data;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.kmymoney.api.currency.ComplexPriceTable;
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyFile;
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.kmymoney.base.basetypes.complex.KMMQualifSecCurrID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import xyz.schnorxoborx.base.numbers.FixedPointNumber;
+
+/**
+ * A compact, read-only copy of the accounts, transactions, splits and
+ * prices of a KMyMoney file, kept in primitive arrays.
+ * <br>
+ * All entities are addressed by their ordinal (0..count-1):
+ * <ul>
+ *   <li>Transactions are sorted by the date they were posted.</li>
+ *   <li>Splits are grouped by transaction (in the order they have
+ *       in the transaction), i.e. the splits of transaction <code>t</code>
+ *       are <code>getTransactionSplitStart(t) .. getTransactionSplitEnd(t) - 1</code>.</li>
+ *   <li>Amounts are fixed-point longs, cf. {@link Amounts}. The few splits
+ *       whose value or shares had to be rounded to units are listed
+ *       (cf. {@link #isSplitExact(int)}).</li>
+ *   <li>Dates are epoch-days ({@link #NO_DATE} if unknown).</li>
+ *   <li>Prices are the rates of the currencies/securities the accounts are
+ *       kept in to the base currency (as of loading the file; the base currency
+ *       itself has the rate 1).</li>
+ * </ul>
+ */
+public final class CompactBook {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CompactBook.class);
+
+	public static final int NO_DATE   = Integer.MIN_VALUE;
+	public static final int NO_PARENT = -1;
+	public static final int NO_ACCOUNT = -1;
+
+	// Accounts
+	private final String[] acctID;
+	private final String[] acctName;
+	private final int[]    acctParent;
+	private final String[] acctSecCurr;
+
+	// Transactions
+	private final String[] trxID;
+	private final int[]    trxDate;
+	private final String[] trxMemo;
+	private final int[]    trxSplitStart; // length = #transactions + 1
+
+	// Splits
+	private final int[]    spltAcct;
+	private final long[]   spltValue;
+	private final long[]   spltShares;
+	private final String[] spltMemo;
+	private final int[]    spltInexact;   // ascending
+
+	// Prices
+	private final String[] priceSecCurr;
+	private final long[]   priceToBase;
+
+	// Derived
+	private final int[] spltTrx;
+	private final Map<String, Integer> acctOrdByID;
+	private final Map<String, Integer> trxOrdByID;
+	private final int[] acctSplitStart; // length = #accounts + 1
+	private final int[] acctSplits;
+
+	// ---------------------------------------------------------------
+
+	CompactBook(final String[] acctID, final String[] acctName, final int[] acctParent, final String[] acctSecCurr,
+			    final String[] trxID, final int[] trxDate, final String[] trxMemo, final int[] trxSplitStart,
+			    final int[] spltAcct, final long[] spltValue, final long[] spltShares, final String[] spltMemo,
+			    final int[] spltInexact,
+			    final String[] priceSecCurr, final long[] priceToBase) {
+		this.acctID = acctID;
+		this.acctName = acctName;
+		this.acctParent = acctParent;
+		this.acctSecCurr = acctSecCurr;
+
+		this.trxID = trxID;
+		this.trxDate = trxDate;
+		this.trxMemo = trxMemo;
+		this.trxSplitStart = trxSplitStart;
+
+		this.spltAcct = spltAcct;
+		this.spltValue = spltValue;
+		this.spltShares = spltShares;
+		this.spltMemo = spltMemo;
+		this.spltInexact = spltInexact;
+
+		this.priceSecCurr = priceSecCurr;
+		this.priceToBase = priceToBase;
+
+		// ---
+
+		// The derived indexes are independent of each other,
+		// so build them in parallel
+		long start = System.currentTimeMillis();
+		CompletableFuture<int[]> spltTrxFtr = CompletableFuture.supplyAsync(new Supplier<int[]>() {
+			public int[] get() {
+				return buildSplitTransactions(trxSplitStart, spltAcct.length);
+			}
+		});
+		CompletableFuture<Map<String, Integer>> acctOrdFtr = CompletableFuture.supplyAsync(new Supplier<Map<String, Integer>>() {
+			public Map<String, Integer> get() {
+				return buildOrdinals(acctID);
+			}
+		});
+		CompletableFuture<Map<String, Integer>> trxOrdFtr = CompletableFuture.supplyAsync(new Supplier<Map<String, Integer>>() {
+			public Map<String, Integer> get() {
+				return buildOrdinals(trxID);
+			}
+		});
+
+		// Per-account split lists (counting sort; as split ordinals
+		// follow the transactions, they are sorted by date as well)
+		acctSplitStart = new int[acctID.length + 1];
+		acctSplits = buildAccountSplits(spltAcct, acctSplitStart);
+
+		spltTrx = spltTrxFtr.join();
+		acctOrdByID = acctOrdFtr.join();
+		trxOrdByID = trxOrdFtr.join();
+		LOGGER.debug("CompactBook: Built derived indexes in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	private static int[] buildSplitTransactions(final int[] trxSplitStart, final int nofSplts) {
+		int[] result = new int[nofSplts];
+		for ( int t = 0; t < trxSplitStart.length - 1; t++ ) {
+			Arrays.fill(result, trxSplitStart[t], trxSplitStart[t + 1], t);
+		}
+		return result;
+	}
+
+	private static Map<String, Integer> buildOrdinals(final String[] ids) {
+		Map<String, Integer> result = new HashMap<String, Integer>(ids.length * 2);
+		for ( int i = 0; i < ids.length; i++ ) {
+			result.put(ids[i], i);
+		}
+		return result;
+	}
+
+	/**
+	 * @param spltAcct  the account of each split
+	 * @param acctStart (out) the start of each account's splits in the result
+	 *                  (length = #accounts + 1)
+	 * @return the splits, grouped by account
+	 */
+	private static int[] buildAccountSplits(final int[] spltAcct, final int[] acctStart) {
+		int nofAccts = acctStart.length - 1;
+		for ( int acct : spltAcct ) {
+			if ( acct != NO_ACCOUNT ) {
+				acctStart[acct + 1]++;
+			}
+		}
+		for ( int a = 0; a < nofAccts; a++ ) {
+			acctStart[a + 1] += acctStart[a];
+		}
+		int[] result = new int[acctStart[nofAccts]];
+		int[] fill = Arrays.copyOf(acctStart, nofAccts);
+		for ( int s = 0; s < spltAcct.length; s++ ) {
+			if ( spltAcct[s] != NO_ACCOUNT ) {
+				result[fill[spltAcct[s]]++] = s;
+			}
+		}
+		return result;
+	}
+
+	// ---------------------------------------------------------------
+
+	public int getAccountCount() {
+		return acctID.length;
+	}
+
+	public String getAccountID(final int acct) {
+		return acctID[acct];
+	}
+
+	public String getAccountName(final int acct) {
+		return acctName[acct];
+	}
+
+	/**
+	 * @return the parent's ordinal or {@link #NO_PARENT} for top-level accounts
+	 */
+	public int getAccountParent(final int acct) {
+		return acctParent[acct];
+	}
+
+	/**
+	 * @return the code of the currency/security the account is kept in
+	 */
+	public String getAccountSecCurr(final int acct) {
+		return acctSecCurr[acct];
+	}
+
+	/**
+	 * @return the ordinal of the account or {@link #NO_ACCOUNT}
+	 */
+	public int getAccountOrdinal(final String id) {
+		Integer ord = acctOrdByID.get(id);
+		return ord == null ? NO_ACCOUNT : ord;
+	}
+
+	/**
+	 * @return the position of the account's first split in {@link #getAccountSplitAt(int)}
+	 */
+	public int getAccountSplitStart(final int acct) {
+		return acctSplitStart[acct];
+	}
+
+	/**
+	 * @return the position after the account's last split in {@link #getAccountSplitAt(int)}
+	 */
+	public int getAccountSplitEnd(final int acct) {
+		return acctSplitStart[acct + 1];
+	}
+
+	/**
+	 * @param pos a position between {@link #getAccountSplitStart(int)}
+	 *            and {@link #getAccountSplitEnd(int)} of an account
+	 * @return the split-ordinal at that position
+	 */
+	public int getAccountSplitAt(final int pos) {
+		return acctSplits[pos];
+	}
+
+	// ---------------------------------------------------------------
+
+	public int getTransactionCount() {
+		return trxID.length;
+	}
+
+	public String getTransactionID(final int trx) {
+		return trxID[trx];
+	}
+
+	/**
+	 * @return the epoch-day the transaction was posted or {@link #NO_DATE}
+	 */
+	public int getTransactionDate(final int trx) {
+		return trxDate[trx];
+	}
+
+	public String getTransactionMemo(final int trx) {
+		return trxMemo[trx];
+	}
+
+	public int getTransactionSplitStart(final int trx) {
+		return trxSplitStart[trx];
+	}
+
+	public int getTransactionSplitEnd(final int trx) {
+		return trxSplitStart[trx + 1];
+	}
+
+	/**
+	 * @return the ordinal of the transaction or -1
+	 */
+	public int getTransactionOrdinal(final String id) {
+		Integer ord = trxOrdByID.get(id);
+		return ord == null ? -1 : ord;
+	}
+
+	// ---------------------------------------------------------------
+
+	public int getSplitCount() {
+		return spltAcct.length;
+	}
+
+	public int getSplitTransaction(final int splt) {
+		return spltTrx[splt];
+	}
+
+	/**
+	 * @return the account's ordinal or {@link #NO_ACCOUNT}
+	 */
+	public int getSplitAccount(final int splt) {
+		return spltAcct[splt];
+	}
+
+	/**
+	 * @return the value (in the transaction's currency) in units
+	 */
+	public long getSplitValue(final int splt) {
+		return spltValue[splt];
+	}
+
+	/**
+	 * @return the shares (in the account's currency/security) in units
+	 */
+	public long getSplitShares(final int splt) {
+		return spltShares[splt];
+	}
+
+	public String getSplitMemo(final int splt) {
+		return spltMemo[splt];
+	}
+
+	/**
+	 * @return whether value and shares of the split are exactly the ones of the file
+	 *         (otherwise at least one of them has been rounded to units)
+	 */
+	public boolean isSplitExact(final int splt) {
+		return spltInexact.length == 0 || Arrays.binarySearch(spltInexact, splt) < 0;
+	}
+
+	/**
+	 * @param fromTrx the first transaction-ordinal
+	 * @param toTrx   the transaction-ordinal after the last one
+	 * @return the splits of the transactions that are not exact 
+	 *         (cf. {@link #isSplitExact(int)}), ascending
+	 */
+	public int[] getInexactSplits(final int fromTrx, final int toTrx) {
+		if ( spltInexact.length == 0 || fromTrx >= toTrx ) {
+			return new int[0];
+		}
+		int from = Arrays.binarySearch(spltInexact, trxSplitStart[fromTrx]);
+		int to = Arrays.binarySearch(spltInexact, trxSplitStart[toTrx]);
+		return Arrays.copyOfRange(spltInexact,
+								  from < 0 ? -from - 1 : from,
+								  to < 0 ? -to - 1 : to);
+	}
+
+	// ---------------------------------------------------------------
+
+	public int getPriceCount() {
+		return priceSecCurr.length;
+	}
+
+	public String getPriceSecCurr(final int price) {
+		return priceSecCurr[price];
+	}
+
+	/**
+	 * @return the value of one unit of the currency/security in the base currency (in units)
+	 */
+	public long getPriceToBase(final int price) {
+		return priceToBase[price];
+	}
+
+	/**
+	 * @return a rough estimate of the heap (in bytes) this book occupies
+	 *         (arrays only, shared strings counted once per reference)
+	 */
+	public long estimateSize() {
+		final int ref = 8;
+		final int str = 48;
+		long size = 0;
+		size += (long) acctID.length * (3 * (ref + str) + Integer.BYTES);
+		size += (long) trxID.length * (2 * (ref + str) + 2 * Integer.BYTES);
+		size += (long) spltAcct.length * (ref + 3 * Integer.BYTES + 2 * Long.BYTES);
+		size += (long) spltInexact.length * Integer.BYTES;
+		size += (long) priceSecCurr.length * (ref + Long.BYTES);
+		size += 2L * (acctID.length + trxID.length) * (ref + 32); // ID-maps
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "CompactBook [" + getAccountCount() + " accounts, "
+				+ getTransactionCount() + " transactions, "
+				+ getSplitCount() + " splits, "
+				+ getPriceCount() + " prices]";
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * Build the compact copy of an already loaded file
+	 * by walking its object-graph once.
+	 *
+	 * @param book the loaded file
+	 * @return the compact copy
+	 */
+	public static CompactBook of(final KMyMoneyFile book) {
+		if ( book == null ) {
+			throw new IllegalArgumentException("argument <book> is null");
+		}
+
+		Builder builder = new Builder();
+
+		List<KMyMoneyAccount> accounts = new ArrayList<KMyMoneyAccount>();
+		for ( KMyMoneyAccount topAcct : book.getTopAccounts() ) {
+			addAccount(builder, topAcct, null, accounts);
+		}
+
+		Map<String, KMyMoneyTransaction> trxByID = new LinkedHashMap<String, KMyMoneyTransaction>();
+		Map<String, KMMQualifSecCurrID> secCurrs = new LinkedHashMap<String, KMMQualifSecCurrID>();
+		for ( KMyMoneyAccount acct : accounts ) {
+			secCurrs.put(acct.getQualifSecCurrID().getCode(), acct.getQualifSecCurrID());
+			for ( KMyMoneyTransactionSplit splt : acct.getTransactionSplits() ) {
+				KMyMoneyTransaction trx = splt.getTransaction();
+				if ( trx != null ) {
+					trxByID.put(trx.getID().toString(), trx);
+				}
+			}
+		}
+
+		for ( KMyMoneyTransaction trx : trxByID.values() ) {
+			LocalDate datePosted = trx.getDatePosted();
+			builder.addTransaction(trx.getID().toString(),
+					               datePosted == null ? NO_DATE : (int) datePosted.toEpochDay(),
+					               trx.getMemo());
+			for ( KMyMoneyTransactionSplit splt : trx.getSplits() ) {
+				builder.addSplit(splt.getAccountID().toString(),
+						         Amounts.toUnits(splt.getValue()),
+						         Amounts.toUnits(splt.getShares()),
+						         Amounts.isExact(splt.getValue()) && Amounts.isExact(splt.getShares()),
+						         splt.getMemo());
+			}
+		}
+
+		ComplexPriceTable priceTable = book.getCurrencyTable();
+		if ( priceTable != null ) {
+			for ( Map.Entry<String, KMMQualifSecCurrID> entry : secCurrs.entrySet() ) {
+				FixedPointNumber rate = new FixedPointNumber(1);
+				if ( priceTable.convertToBaseCurrency(rate, entry.getValue()) ) {
+					builder.addPrice(entry.getKey(), Amounts.toUnits(rate));
+				}
+			}
+		}
+
+		return builder.build();
+	}
+
+	private static void addAccount(final Builder builder, final KMyMoneyAccount acct, final KMyMoneyAccount parent,
+			                       final List<KMyMoneyAccount> accounts) {
+		builder.addAccount(acct.getID().toString(),
+				           acct.getName(),
+				           parent == null ? null : parent.getID().toString(),
+				           acct.getQualifSecCurrID().getCode());
+		accounts.add(acct);
+
+		Collection<? extends KMyMoneyAccount> children = acct.getChildren();
+		for ( KMyMoneyAccount child : children ) {
+			addAccount(builder, child, acct, accounts);
+		}
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * Collects the entities of a book in any order
+	 * and builds the {@link CompactBook} from them.
+	 * <br>
+	 * Splits are added to the transaction added last.
+	 * Accounts may be referenced before they are added.
+	 */
+	public static final class Builder {
+
+		private final List<String> acctID      = new ArrayList<String>();
+		private final List<String> acctName    = new ArrayList<String>();
+		private final List<String> acctParent  = new ArrayList<String>();
+		private final List<String> acctSecCurr = new ArrayList<String>();
+
+		private final List<String> trxID   = new ArrayList<String>();
+		private final List<String> trxMemo = new ArrayList<String>();
+		private int[] trxDate       = new int[1024];
+		private int[] trxSplitStart = new int[1024];
+
+		private final List<String> spltAcct = new ArrayList<String>();
+		private final List<String> spltMemo = new ArrayList<String>();
+		private long[] spltValue  = new long[4096];
+		private long[] spltShares = new long[4096];
+		private final BitSet spltInexact = new BitSet();
+
+		private final List<String> priceSecCurr = new ArrayList<String>();
+		private long[] priceToBase = new long[64];
+
+		// Keeps repeated strings (account-IDs, codes, memos) only once
+		private final Map<String, String> strings = new HashMap<String, String>();
+
+		private String pool(final String str) {
+			if ( str == null ) {
+				return null;
+			}
+			String pooled = strings.putIfAbsent(str, str);
+			return pooled == null ? str : pooled;
+		}
+
+		public Builder addAccount(final String id, final String name, final String parentID, final String secCurr) {
+			acctID.add(pool(id));
+			acctName.add(name);
+			acctParent.add(parentID == null || parentID.isEmpty() ? null : pool(parentID));
+			acctSecCurr.add(pool(secCurr));
+			return this;
+		}
+
+		public Builder addTransaction(final String id, final int date, final String memo) {
+			int t = trxID.size();
+			if ( t + 1 >= trxDate.length ) {
+				trxDate = Arrays.copyOf(trxDate, trxDate.length * 2);
+				trxSplitStart = Arrays.copyOf(trxSplitStart, trxSplitStart.length * 2);
+			}
+			trxID.add(id);
+			trxMemo.add(pool(memo));
+			trxDate[t] = date;
+			trxSplitStart[t] = spltAcct.size();
+			return this;
+		}
+
+		/**
+		 * @param acctID the ID of the split's account
+		 * @param value  the value in units
+		 * @param shares the shares in units
+		 * @param exact  whether value and shares are exact (not rounded to units)
+		 * @param memo   the memo (may be null)
+		 */
+		public Builder addSplit(final String acctID, final long value, final long shares, final boolean exact, final String memo) {
+			if ( trxID.isEmpty() ) {
+				throw new IllegalStateException("split without transaction");
+			}
+
+			int s = spltAcct.size();
+			if ( s >= spltValue.length ) {
+				spltValue = Arrays.copyOf(spltValue, spltValue.length * 2);
+				spltShares = Arrays.copyOf(spltShares, spltShares.length * 2);
+			}
+			spltAcct.add(pool(acctID));
+			spltMemo.add(pool(memo));
+			spltValue[s] = value;
+			spltShares[s] = shares;
+			if ( ! exact ) {
+				spltInexact.set(s);
+			}
+			return this;
+		}
+
+		public Builder addPrice(final String secCurr, final long toBase) {
+			int p = priceSecCurr.size();
+			if ( p >= priceToBase.length ) {
+				priceToBase = Arrays.copyOf(priceToBase, priceToBase.length * 2);
+			}
+			priceSecCurr.add(pool(secCurr));
+			priceToBase[p] = toBase;
+			return this;
+		}
+
+		public CompactBook build() {
+			// Accounts
+			int nofAccts = acctID.size();
+			Map<String, Integer> acctOrd = new HashMap<String, Integer>(nofAccts * 2);
+			for ( int a = 0; a < nofAccts; a++ ) {
+				acctOrd.put(acctID.get(a), a);
+			}
+			int[] parents = new int[nofAccts];
+			for ( int a = 0; a < nofAccts; a++ ) {
+				Integer parent = acctParent.get(a) == null ? null : acctOrd.get(acctParent.get(a));
+				parents[a] = parent == null ? NO_PARENT : parent;
+			}
+
+			// Transactions, sorted by date (stable)
+			final int nofTrx = trxID.size();
+			final int nofSplts = spltAcct.size();
+			trxSplitStart[nofTrx] = nofSplts;
+			Integer[] order = new Integer[nofTrx];
+			for ( int t = 0; t < nofTrx; t++ ) {
+				order[t] = t;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(final Integer t1, final Integer t2) {
+					return Integer.compare(trxDate[t1], trxDate[t2]);
+				}
+			});
+
+			String[] newTrxID = new String[nofTrx];
+			String[] newTrxMemo = new String[nofTrx];
+			int[] newTrxDate = new int[nofTrx];
+			int[] newTrxSplitStart = new int[nofTrx + 1];
+
+			int[] newSpltAcct = new int[nofSplts];
+			long[] newSpltValue = new long[nofSplts];
+			long[] newSpltShares = new long[nofSplts];
+			String[] newSpltMemo = new String[nofSplts];
+			int[] newSpltInexact = new int[spltInexact.cardinality()];
+			int nofInexact = 0;
+
+			int s = 0;
+			for ( int t = 0; t < nofTrx; t++ ) {
+				int oldT = order[t];
+				newTrxID[t] = trxID.get(oldT);
+				newTrxMemo[t] = trxMemo.get(oldT);
+				newTrxDate[t] = trxDate[oldT];
+				newTrxSplitStart[t] = s;
+				for ( int oldS = trxSplitStart[oldT]; oldS < trxSplitStart[oldT + 1]; oldS++, s++ ) {
+					Integer acct = acctOrd.get(spltAcct.get(oldS));
+					newSpltAcct[s] = acct == null ? NO_ACCOUNT : acct;
+					newSpltValue[s] = spltValue[oldS];
+					newSpltShares[s] = spltShares[oldS];
+					newSpltMemo[s] = spltMemo.get(oldS);
+					if ( spltInexact.get(oldS) ) {
+						newSpltInexact[nofInexact++] = s;
+					}
+				}
+			}
+			newTrxSplitStart[nofTrx] = s;
+
+			int nofPrices = priceSecCurr.size();
+			return new CompactBook(acctID.toArray(new String[nofAccts]),
+					               acctName.toArray(new String[nofAccts]),
+					               parents,
+					               acctSecCurr.toArray(new String[nofAccts]),
+					               newTrxID, newTrxDate, newTrxMemo, newTrxSplitStart,
+					               newSpltAcct, newSpltValue, newSpltShares, newSpltMemo,
+					               newSpltInexact,
+					               priceSecCurr.toArray(new String[nofPrices]),
+					               Arrays.copyOf(priceToBase, nofPrices));
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+package org.kmymoney.viewer.data;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.kmymoney.api.currency.ComplexPriceTable;
+import org.kmymoney.base.basetypes.complex.KMMQualifSecCurrID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import xyz.schnorxoborx.base.numbers.FixedPointNumber;
+
+/**
+ * The conversion-rates of a price-table, looked up once per pair of
+ * currencies/securities and kept until the table changes.
+ * <br>
+ * Per pair, the factor of each side (what 1 unit is worth in the base-currency)
+ * is kept rather than a combined rate, and an amount is multiplied by the one
+ * and divided by the other just like the price-table itself would do it, so
+ * that the result is the same as converting via the table.
+ * <br>
+ * A pair that cannot be converted is kept as well, so that the
+ * failure is looked into and logged only once.
+ * <br>
+ * There is one instance per price-table (cf. {@link #of(ComplexPriceTable)}); a reloaded
+ * file comes with a new table and hence with new rates. Whoever changes the prices
+ * of a table has to call {@link #invalidate(ComplexPriceTable)}.
+ */
+public final class ConversionRates {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConversionRates.class);
+
+	private static final Map<ComplexPriceTable, ConversionRates> RATES =
+			Collections.synchronizedMap(new WeakHashMap<ComplexPriceTable, ConversionRates>());
+
+	// Marks a pair that cannot be converted (compared by identity)
+	private static final FixedPointNumber[] NO_FACTORS = new FixedPointNumber[0];
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * A pair of currencies/securities.
+	 */
+	private static final class Key {
+		private final KMMQualifSecCurrID from;
+		private final KMMQualifSecCurrID to;
+
+		private Key(final KMMQualifSecCurrID from, final KMMQualifSecCurrID to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * from.hashCode() + to.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if ( ! (obj instanceof Key) ) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return from.equals(other.from) && to.equals(other.to);
+		}
+	}
+
+	// ---------------------------------------------------------------
+
+	private final ComplexPriceTable priceTable;
+
+	private final Map<Key, FixedPointNumber[]> factorsByPair = new ConcurrentHashMap<Key, FixedPointNumber[]>();
+
+	// ---------------------------------------------------------------
+
+	private ConversionRates(final ComplexPriceTable priceTable) {
+		this.priceTable = priceTable;
+	}
+
+	/**
+	 * @param priceTable a price-table
+	 * @return the rates of the table
+	 */
+	public static ConversionRates of(final ComplexPriceTable priceTable) {
+		if ( priceTable == null ) {
+			throw new IllegalArgumentException("argument <priceTable> is null");
+		}
+
+		synchronized ( RATES ) {
+			ConversionRates result = RATES.get(priceTable);
+			if ( result == null ) {
+				result = new ConversionRates(priceTable);
+				RATES.put(priceTable, result);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Forget the rates of a price-table (because its prices have changed).
+	 *
+	 * @param priceTable a price-table
+	 */
+	public static void invalidate(final ComplexPriceTable priceTable) {
+		if ( priceTable == null ) {
+			throw new IllegalArgumentException("argument <priceTable> is null");
+		}
+
+		RATES.remove(priceTable);
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * @param amount an amount in from
+	 * @param from   a currency/security
+	 * @param to     another currency/security
+	 * @return the amount in to or null if it cannot be converted
+	 */
+	public FixedPointNumber convert(final FixedPointNumber amount,
+									final KMMQualifSecCurrID from, final KMMQualifSecCurrID to) {
+		if ( amount == null ) {
+			throw new IllegalArgumentException("argument <amount> is null");
+		}
+
+		if ( from == null ) {
+			throw new IllegalArgumentException("argument <from> is null");
+		}
+
+		if ( to == null ) {
+			throw new IllegalArgumentException("argument <to> is null");
+		}
+
+		Key key = new Key(from, to);
+		FixedPointNumber[] factors = factorsByPair.get(key);
+		if ( factors == null ) {
+			factors = lookUp(from, to);
+			factorsByPair.put(key, factors);
+		}
+		if ( factors == NO_FACTORS ) {
+			return null;
+		}
+
+		// same steps and order as convertToBaseCurrency() followed by convertFromBaseCurrency()
+		return new FixedPointNumber(amount).multiply(factors[0]).divideBy(factors[1]);
+	}
+
+	/**
+	 * The factors are taken from the price-table by converting 1 unit of from and
+	 * of to into the base-currency: the table multiplies by the very same factor when
+	 * converting to the base-currency and divides by it when converting from it.
+	 *
+	 * @return the factors of from and to (in that order) or NO_FACTORS
+	 */
+	private FixedPointNumber[] lookUp(final KMMQualifSecCurrID from, final KMMQualifSecCurrID to) {
+		FixedPointNumber fromFactor = new FixedPointNumber(1);
+		if ( ! priceTable.convertToBaseCurrency(fromFactor, from) ) {
+			Collection<String> currencies = priceTable.getCurrencies(from.getType());
+			LOGGER.warn("lookUp: Cannot convert from '"
+					+ from.getType() + "'-'" + from
+					+ "' to the base-currency"
+					+ " (we know " + priceTable.getNameSpaces().size()
+					+ " currency-namespaces and "
+					+ (currencies == null ? "no" : "" + currencies.size())
+					+ " currencies in its namespace)");
+			return NO_FACTORS;
+		}
+
+		FixedPointNumber toFactor = new FixedPointNumber(1);
+		if ( ! priceTable.convertFromBaseCurrency(new FixedPointNumber(1), to)
+			 || ! priceTable.convertToBaseCurrency(toFactor, to) ) {
+			LOGGER.warn("lookUp: Cannot convert from the base-currency to '"
+					+ to.getType() + "'-'" + to + "'");
+			return NO_FACTORS;
+		}
+		return new FixedPointNumber[] { fromFactor, toFactor };
+	}
+
+}
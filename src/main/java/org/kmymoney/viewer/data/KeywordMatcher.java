@@ -0,0 +1,186 @@
+package org.kmymoney.viewer.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds which of up to {@value #MAX_KEYWORDS} keywords a text contains,
+ * scanning the text only once, no matter how many keywords there are
+ * (an Aho-Corasick automaton).
+ * <br>
+ * Keyword i is reported as bit i of the result of {@link #match(String)}.
+ * Immutable and thread-safe.
+ */
+public final class KeywordMatcher {
+
+	public static final int MAX_KEYWORDS = Long.SIZE;
+
+	/**
+	 * Matches nothing.
+	 */
+	public static final KeywordMatcher NONE = of(new ArrayList<String>());
+
+	private static final int ROOT = 0;
+
+	// ---------------------------------------------------------------
+
+	// Transitions of node n: to edgeTargets[n][i] on character edgeChars[n][i] (sorted)
+	private final char[][] edgeChars;
+	private final int[][] edgeTargets;
+
+	// Node to continue with if there is no transition
+	private final int[] fail;
+
+	// Keywords ending at the node (incl. those of its fail-chain)
+	private final long[] output;
+
+	private final int nofKeywords;
+
+	// ---------------------------------------------------------------
+
+	private KeywordMatcher(final char[][] edgeChars, final int[][] edgeTargets,
+						   final int[] fail, final long[] output, final int nofKeywords) {
+		this.edgeChars = edgeChars;
+		this.edgeTargets = edgeTargets;
+		this.fail = fail;
+		this.output = output;
+		this.nofKeywords = nofKeywords;
+	}
+
+	/**
+	 * @param keywords the keywords to look for (case-sensitive, not empty)
+	 * @return the matcher
+	 */
+	public static KeywordMatcher of(final List<String> keywords) {
+		if ( keywords == null ) {
+			throw new IllegalArgumentException("argument <keywords> is null");
+		}
+
+		if ( keywords.size() > MAX_KEYWORDS ) {
+			throw new IllegalArgumentException("more than " + MAX_KEYWORDS + " keywords given");
+		}
+
+		// The trie of the keywords
+		List<TreeMap<Character, Integer>> trie = new ArrayList<TreeMap<Character, Integer>>();
+		List<Long> out = new ArrayList<Long>();
+		trie.add(new TreeMap<Character, Integer>());
+		out.add(0L);
+		for ( int k = 0; k < keywords.size(); k++ ) {
+			String keyword = keywords.get(k);
+			if ( keyword == null || keyword.length() == 0 ) {
+				throw new IllegalArgumentException("keyword " + k + " is empty");
+			}
+
+			int node = ROOT;
+			for ( int i = 0; i < keyword.length(); i++ ) {
+				Integer next = trie.get(node).get(keyword.charAt(i));
+				if ( next == null ) {
+					next = trie.size();
+					trie.add(new TreeMap<Character, Integer>());
+					out.add(0L);
+					trie.get(node).put(keyword.charAt(i), next);
+				}
+				node = next;
+			}
+			out.set(node, out.get(node) | (1L << k));
+		}
+
+		// Freeze it
+		int nofNodes = trie.size();
+		char[][] edgeChars = new char[nofNodes][];
+		int[][] edgeTargets = new int[nofNodes][];
+		long[] output = new long[nofNodes];
+		for ( int n = 0; n < nofNodes; n++ ) {
+			TreeMap<Character, Integer> edges = trie.get(n);
+			edgeChars[n] = new char[edges.size()];
+			edgeTargets[n] = new int[edges.size()];
+			int i = 0;
+			for ( Map.Entry<Character, Integer> edge : edges.entrySet() ) {
+				edgeChars[n][i] = edge.getKey();
+				edgeTargets[n][i] = edge.getValue();
+				i++;
+			}
+			output[n] = out.get(n);
+		}
+
+		// Fail-links, breadth-first (a node's fail-link is always shallower)
+		int[] fail = new int[nofNodes];
+		int[] queue = new int[nofNodes];
+		int head = 0;
+		int tail = 0;
+		for ( int child : edgeTargets[ROOT] ) {
+			fail[child] = ROOT;
+			queue[tail++] = child;
+		}
+		while ( head < tail ) {
+			int node = queue[head++];
+			for ( int i = 0; i < edgeChars[node].length; i++ ) {
+				char c = edgeChars[node][i];
+				int child = edgeTargets[node][i];
+				int f = fail[node];
+				int target = transition(edgeChars, edgeTargets, f, c);
+				while ( target < 0 && f != ROOT ) {
+					f = fail[f];
+					target = transition(edgeChars, edgeTargets, f, c);
+				}
+				fail[child] = target < 0 ? ROOT : target;
+				output[child] |= output[fail[child]];
+				queue[tail++] = child;
+			}
+		}
+
+		return new KeywordMatcher(edgeChars, edgeTargets, fail, output, keywords.size());
+	}
+
+	private static int transition(final char[][] edgeChars, final int[][] edgeTargets,
+								  final int node, final char c) {
+		int i = Arrays.binarySearch(edgeChars[node], c);
+		return i < 0 ? -1 : edgeTargets[node][i];
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * @return the number of keywords
+	 */
+	public int size() {
+		return nofKeywords;
+	}
+
+	/**
+	 * @param text the text to scan (may be null)
+	 * @return the keywords the text contains (bit i set for keyword i)
+	 */
+	public long match(final String text) {
+		if ( text == null || nofKeywords == 0 ) {
+			return 0;
+		}
+
+		long result = 0;
+		int node = ROOT;
+		for ( int i = 0; i < text.length(); i++ ) {
+			char c = text.charAt(i);
+			int next = transition(edgeChars, edgeTargets, node, c);
+			while ( next < 0 && node != ROOT ) {
+				node = fail[node];
+				next = transition(edgeChars, edgeTargets, node, c);
+			}
+			node = next < 0 ? ROOT : next;
+			result |= output[node];
+		}
+		return result;
+	}
+
+	/**
+	 * @param text the text to scan (may be null)
+	 * @return the first of the keywords (the one with the lowest number)
+	 *         the text contains (as a single bit) or 0 if it contains none
+	 */
+	public long matchFirst(final String text) {
+		return Long.lowestOneBit(match(text));
+	}
+
+}
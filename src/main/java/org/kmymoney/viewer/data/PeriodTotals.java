@@ -0,0 +1,252 @@
+package org.kmymoney.viewer.data;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * The shares of the splits of a {@link CompactBook} totalled per account and period,
+ * separately for inflows (shares &gt; 0) and outflows (shares &lt;= 0), along with
+ * the number of splits.
+ * <br>
+ * The periods ("buckets") are the months, except for the current year,
+ * which is split into days; bucket 0 holds the transactions without a date.
+ * As the transactions of the compact book are sorted by date, every bucket is a range
+ * of transaction-ordinals (cf. {@link #getBucketStart(int)}), so the totals of a range of
+ * transactions are those of the whole buckets within it (looked up in constant time,
+ * cf. {@link #getInflow(int, int, int)}) plus those of the transactions
+ * before the first and after the last of these buckets.
+ * <br>
+ * Only the splits whose amounts are exact in units are totalled
+ * (cf. {@link CompactBook#isSplitExact(int)}); the others of the buckets have to be
+ * added one by one (cf. {@link CompactBook#getInexactSplits(int, int)}) to get the
+ * same result as summing up the splits of the range.
+ */
+public final class PeriodTotals {
+
+	// ---------------------------------------------------------------
+
+	private final int nofBuckets;
+
+	// Bucket b: transactions bucketStart[b] .. bucketStart[b + 1] - 1
+	private final int[] bucketStart;
+
+	// Per account a and bucket b: the totals of buckets 0 .. b - 1
+	// at a * (nofBuckets + 1) + b
+	private final long[] inflow;
+	private final long[] outflow;
+	private final int[] inflowCount;
+	private final int[] outflowCount;
+
+	// ---------------------------------------------------------------
+
+	private PeriodTotals(final int[] bucketStart, final int nofAccts) {
+		this.nofBuckets = bucketStart.length - 1;
+		this.bucketStart = bucketStart;
+		int size = nofAccts * (nofBuckets + 1);
+		inflow = new long[size];
+		outflow = new long[size];
+		inflowCount = new int[size];
+		outflowCount = new int[size];
+	}
+
+	/**
+	 * @param book  a compact book
+	 * @param today the date that determines the current year
+	 * @return the totals of the book
+	 */
+	public static PeriodTotals of(final CompactBook book, final LocalDate today) {
+		if ( book == null ) {
+			throw new IllegalArgumentException("argument <book> is null");
+		}
+
+		if ( today == null ) {
+			throw new IllegalArgumentException("argument <today> is null");
+		}
+
+		int nofTrx = book.getTransactionCount();
+		int[] startDays = getBucketStartDays(book, today);
+
+		// The buckets' ranges of transactions and the bucket of each transaction
+		int[] bucketStart = new int[startDays.length + 1];
+		int[] bucketOfTrx = new int[nofTrx];
+		int bucket = 0;
+		for ( int trx = 0; trx < nofTrx; trx++ ) {
+			int date = book.getTransactionDate(trx);
+			while ( bucket + 1 < startDays.length && date >= startDays[bucket + 1] ) {
+				bucketStart[++bucket] = trx;
+			}
+			bucketOfTrx[trx] = bucket;
+		}
+		while ( bucket + 1 < bucketStart.length ) {
+			bucketStart[++bucket] = nofTrx;
+		}
+
+		PeriodTotals totals = new PeriodTotals(bucketStart, book.getAccountCount());
+		int stride = totals.nofBuckets + 1;
+		for ( int splt = 0; splt < book.getSplitCount(); splt++ ) {
+			int acct = book.getSplitAccount(splt);
+			if ( acct == CompactBook.NO_ACCOUNT || ! book.isSplitExact(splt) ) {
+				continue;
+			}
+			// the bucket's own totals go to the slot after it for now
+			int pos = acct * stride + bucketOfTrx[book.getSplitTransaction(splt)] + 1;
+			long shares = book.getSplitShares(splt);
+			if ( shares > 0 ) {
+				totals.inflow[pos] += shares;
+				totals.inflowCount[pos]++;
+			} else {
+				totals.outflow[pos] += shares;
+				totals.outflowCount[pos]++;
+			}
+		}
+
+		// Running totals per account
+		for ( int acct = 0; acct < book.getAccountCount(); acct++ ) {
+			for ( int pos = acct * stride + 1; pos < (acct + 1) * stride; pos++ ) {
+				totals.inflow[pos] += totals.inflow[pos - 1];
+				totals.outflow[pos] += totals.outflow[pos - 1];
+				totals.inflowCount[pos] += totals.inflowCount[pos - 1];
+				totals.outflowCount[pos] += totals.outflowCount[pos - 1];
+			}
+		}
+
+		return totals;
+	}
+
+	/**
+	 * @return the first day (epoch-day) of every bucket, ascending
+	 */
+	private static int[] getBucketStartDays(final CompactBook book, final LocalDate today) {
+		int firstDay = Integer.MAX_VALUE;
+		int lastDay = Integer.MIN_VALUE;
+		for ( int trx = 0; trx < book.getTransactionCount(); trx++ ) {
+			int date = book.getTransactionDate(trx);
+			if ( date != CompactBook.NO_DATE ) {
+				firstDay = Math.min(firstDay, date);
+				lastDay = Math.max(lastDay, date);
+			}
+		}
+
+		int[] result = new int[16];
+		int n = 0;
+		result[n++] = CompactBook.NO_DATE;
+		if ( firstDay <= lastDay ) {
+			LocalDate yearStart = today.withDayOfYear(1);
+			LocalDate nextYearStart = yearStart.plusYears(1);
+			LocalDate end = LocalDate.ofEpochDay(lastDay);
+			for ( LocalDate day = LocalDate.ofEpochDay(firstDay).withDayOfMonth(1); ! day.isAfter(end); ) {
+				if ( n == result.length ) {
+					result = Arrays.copyOf(result, 2 * n);
+				}
+				result[n++] = (int) day.toEpochDay();
+				boolean daily = ! day.isBefore(yearStart) && day.isBefore(nextYearStart);
+				day = daily ? day.plusDays(1) : day.plusMonths(1);
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * @return the number of buckets
+	 */
+	public int getBucketCount() {
+		return nofBuckets;
+	}
+
+	/**
+	 * @param bucket a bucket (or {@link #getBucketCount()})
+	 * @return the first transaction-ordinal of the bucket
+	 *         (the number of transactions for {@link #getBucketCount()})
+	 */
+	public int getBucketStart(final int bucket) {
+		return bucketStart[bucket];
+	}
+
+	/**
+	 * @param trxOrd a transaction-ordinal (or the number of transactions)
+	 * @return the first bucket that starts at or after the transaction
+	 *         ({@link #getBucketCount()} if there is none)
+	 */
+	public int getFirstBucketFrom(final int trxOrd) {
+		int lo = 0;
+		int hi = nofBuckets;
+		while ( lo < hi ) {
+			int mid = (lo + hi) >>> 1;
+			if ( bucketStart[mid] < trxOrd ) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @param trxOrd a transaction-ordinal (or the number of transactions)
+	 * @return the last bucket that starts at or before the transaction
+	 *         (i.e. the buckets before it end at or before the transaction)
+	 */
+	public int getLastBucketTo(final int trxOrd) {
+		int lo = 0;
+		int hi = nofBuckets;
+		while ( lo < hi ) {
+			int mid = (lo + hi + 1) >>> 1;
+			if ( bucketStart[mid] <= trxOrd ) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @param acctOrd    an account-ordinal
+	 * @param fromBucket the first bucket
+	 * @param toBucket   the bucket after the last one
+	 * @return the total of the positive shares of the account in the buckets
+	 */
+	public long getInflow(final int acctOrd, final int fromBucket, final int toBucket) {
+		int base = acctOrd * (nofBuckets + 1);
+		return inflow[base + toBucket] - inflow[base + fromBucket];
+	}
+
+	/**
+	 * @return the total of the other shares (&lt;= 0), cf. {@link #getInflow(int, int, int)}
+	 */
+	public long getOutflow(final int acctOrd, final int fromBucket, final int toBucket) {
+		int base = acctOrd * (nofBuckets + 1);
+		return outflow[base + toBucket] - outflow[base + fromBucket];
+	}
+
+	/**
+	 * @return the number of splits of {@link #getInflow(int, int, int)}
+	 */
+	public int getInflowCount(final int acctOrd, final int fromBucket, final int toBucket) {
+		int base = acctOrd * (nofBuckets + 1);
+		return inflowCount[base + toBucket] - inflowCount[base + fromBucket];
+	}
+
+	/**
+	 * @return the number of splits of {@link #getOutflow(int, int, int)}
+	 */
+	public int getOutflowCount(final int acctOrd, final int fromBucket, final int toBucket) {
+		int base = acctOrd * (nofBuckets + 1);
+		return outflowCount[base + toBucket] - outflowCount[base + fromBucket];
+	}
+
+	/**
+	 * @return the approximate size in bytes
+	 */
+	public long estimateSize() {
+		return 4L * bucketStart.length + 24L * inflow.length;
+	}
+
+	@Override
+	public String toString() {
+		return "PeriodTotals [" + nofBuckets + " buckets, ~" + (estimateSize() >> 10) + " KB]";
+	}
+
+}
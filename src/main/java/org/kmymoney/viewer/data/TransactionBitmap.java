@@ -0,0 +1,226 @@
+package org.kmymoney.viewer.data;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of transaction-ordinals (of a {@link CompactBook}),
+ * kept either as a sorted array of the ordinals (if there are few of them)
+ * or as a bitmap (if there are many), whichever is smaller.
+ */
+public final class TransactionBitmap {
+
+	/**
+	 * Contains no transaction.
+	 */
+	public static final TransactionBitmap EMPTY = new TransactionBitmap(new int[0], null, 0);
+
+	// A bitmap is used if more than one in SPARSE_RATIO transactions is contained
+	// (an ordinal takes 32 bits, the bitmap 1 bit per transaction)
+	private static final int SPARSE_RATIO = Integer.SIZE;
+
+	// ---------------------------------------------------------------
+
+	// Exactly one of them is not null
+	private final int[] ordinals;
+	private final long[] words;
+
+	private final int cardinality;
+
+	// ---------------------------------------------------------------
+
+	private TransactionBitmap(final int[] ordinals, final long[] words, final int cardinality) {
+		this.ordinals = ordinals;
+		this.words = words;
+		this.cardinality = cardinality;
+	}
+
+	/**
+	 * @param sorted   transaction-ordinals, ascending and without duplicates
+	 * @param length   the number of ordinals to take from sorted
+	 * @param universe the number of transactions of the book
+	 * @return the set of the ordinals
+	 */
+	public static TransactionBitmap of(final int[] sorted, final int length, final int universe) {
+		if ( length == 0 ) {
+			return EMPTY;
+		}
+		if ( (long) length * SPARSE_RATIO <= universe ) {
+			return new TransactionBitmap(Arrays.copyOf(sorted, length), null, length);
+		}
+
+		long[] words = new long[(universe + 63) >>> 6];
+		for ( int i = 0; i < length; i++ ) {
+			words[sorted[i] >>> 6] |= 1L << sorted[i];
+		}
+		return new TransactionBitmap(null, words, length);
+	}
+
+	private static TransactionBitmap ofWords(final long[] words, final int universe) {
+		int card = 0;
+		for ( long word : words ) {
+			card += Long.bitCount(word);
+		}
+		if ( (long) card * SPARSE_RATIO > universe ) {
+			return new TransactionBitmap(null, words, card);
+		}
+
+		int[] ords = new int[card];
+		int n = 0;
+		for ( int w = 0; w < words.length; w++ ) {
+			for ( long rest = words[w]; rest != 0; rest &= rest - 1 ) {
+				ords[n++] = (w << 6) + Long.numberOfTrailingZeros(rest);
+			}
+		}
+		return card == 0 ? EMPTY : new TransactionBitmap(ords, null, card);
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * @return the number of transactions contained
+	 */
+	public int getCardinality() {
+		return cardinality;
+	}
+
+	public boolean contains(final int trxOrd) {
+		if ( words != null ) {
+			int w = trxOrd >>> 6;
+			return w < words.length && (words[w] & (1L << trxOrd)) != 0;
+		}
+		return Arrays.binarySearch(ordinals, trxOrd) >= 0;
+	}
+
+	/**
+	 * @param from a transaction-ordinal
+	 * @return the first transaction-ordinal >= from contained or -1 if there is none
+	 */
+	public int nextSetBit(final int from) {
+		if ( from < 0 ) {
+			return nextSetBit(0);
+		}
+
+		if ( words != null ) {
+			int w = from >>> 6;
+			if ( w >= words.length ) {
+				return -1;
+			}
+			long word = words[w] & (-1L << from);
+			while ( true ) {
+				if ( word != 0 ) {
+					return (w << 6) + Long.numberOfTrailingZeros(word);
+				}
+				if ( ++w == words.length ) {
+					return -1;
+				}
+				word = words[w];
+			}
+		}
+
+		int i = Arrays.binarySearch(ordinals, from);
+		if ( i < 0 ) {
+			i = -i - 1;
+		}
+		return i < ordinals.length ? ordinals[i] : -1;
+	}
+
+	/**
+	 * @param other    another set
+	 * @param universe the number of transactions of the book
+	 * @return the transactions contained in this set and in the other one
+	 */
+	public TransactionBitmap and(final TransactionBitmap other, final int universe) {
+		if ( cardinality == 0 || other.cardinality == 0 ) {
+			return EMPTY;
+		}
+
+		if ( words != null && other.words != null ) {
+			long[] result = new long[Math.min(words.length, other.words.length)];
+			for ( int w = 0; w < result.length; w++ ) {
+				result[w] = words[w] & other.words[w];
+			}
+			return ofWords(result, universe);
+		}
+
+		// At least one of them is sparse: filter it by the other one
+		TransactionBitmap sparse = words == null ? this : other;
+		TransactionBitmap probe = sparse == this ? other : this;
+		int[] result = new int[sparse.cardinality];
+		int n = 0;
+		for ( int trxOrd : sparse.ordinals ) {
+			if ( probe.contains(trxOrd) ) {
+				result[n++] = trxOrd;
+			}
+		}
+		return of(result, n, universe);
+	}
+
+	/**
+	 * @param other    another set
+	 * @param universe the number of transactions of the book
+	 * @return the transactions contained in this set or in the other one
+	 */
+	public TransactionBitmap or(final TransactionBitmap other, final int universe) {
+		if ( other.cardinality == 0 ) {
+			return this;
+		}
+		if ( cardinality == 0 ) {
+			return other;
+		}
+
+		if ( words != null || other.words != null ||
+			 (long) (cardinality + other.cardinality) * SPARSE_RATIO > universe ) {
+			long[] result = new long[(universe + 63) >>> 6];
+			orInto(result);
+			other.orInto(result);
+			return ofWords(result, universe);
+		}
+
+		// Both are sparse: merge them
+		int[] result = new int[cardinality + other.cardinality];
+		int i = 0;
+		int j = 0;
+		int n = 0;
+		while ( i < ordinals.length && j < other.ordinals.length ) {
+			int a = ordinals[i];
+			int b = other.ordinals[j];
+			if ( a <= b ) {
+				result[n++] = a;
+				i++;
+				if ( a == b ) {
+					j++;
+				}
+			} else {
+				result[n++] = b;
+				j++;
+			}
+		}
+		while ( i < ordinals.length ) {
+			result[n++] = ordinals[i++];
+		}
+		while ( j < other.ordinals.length ) {
+			result[n++] = other.ordinals[j++];
+		}
+		return of(result, n, universe);
+	}
+
+	private void orInto(final long[] result) {
+		if ( words != null ) {
+			for ( int w = 0; w < words.length; w++ ) {
+				result[w] |= words[w];
+			}
+		} else {
+			for ( int trxOrd : ordinals ) {
+				result[trxOrd >>> 6] |= 1L << trxOrd;
+			}
+		}
+	}
+
+	/**
+	 * @return the approximate size in bytes
+	 */
+	public long estimateSize() {
+		return words != null ? 8L * words.length : 4L * ordinals.length;
+	}
+
+}
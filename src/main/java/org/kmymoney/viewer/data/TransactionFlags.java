@@ -0,0 +1,122 @@
+package org.kmymoney.viewer.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Per-transaction flags the registers mark their rows by,
+ * computed once for all transactions of a compact book
+ * and kept in arrays indexed by the transaction-ordinal:
+ * <ul>
+ *   <li>the keywords (of a {@link KeywordMatcher}) found in the memo of the
+ *       transaction and the memos of its splits, where each memo counts only 
+ *       with the first keyword it contains, cf. {@link #getKeywords(int)},</li>
+ *   <li>whether the values of the splits do not add up to 0,
+ *       cf. {@link #isUnbalanced(int)}.</li>
+ * </ul>
+ * The values of the compact book are rounded to units (cf. {@link Amounts}),
+ * by at most half a unit each. So a transaction counts as balanced as long as
+ * the rounded values of its n splits add up to at most n/2 units (e.g. three 
+ * splits of 1/3, 1/3 and -2/3).
+ */
+public final class TransactionFlags {
+
+	// Number of transactions per parallel chunk (a multiple of 64,
+	// so that no two chunks write to the same word)
+	// ::MAGIC
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	// ---------------------------------------------------------------
+
+	private final KeywordMatcher matcher;
+
+	private final long[] keywords;
+	private final long[] unbalanced;
+
+	// ---------------------------------------------------------------
+
+	private TransactionFlags(final KeywordMatcher matcher, final int nofTrx) {
+		this.matcher = matcher;
+		keywords = new long[matcher.size() == 0 ? 0 : nofTrx];
+		unbalanced = new long[(nofTrx + 63) >>> 6];
+	}
+
+	/**
+	 * @param book    a compact book
+	 * @param matcher the keywords to look for in the memos
+	 * @return the flags of all transactions of the book
+	 */
+	public static TransactionFlags of(final CompactBook book, final KeywordMatcher matcher) {
+		if ( book == null ) {
+			throw new IllegalArgumentException("argument <book> is null");
+		}
+
+		if ( matcher == null ) {
+			throw new IllegalArgumentException("argument <matcher> is null");
+		}
+
+		final TransactionFlags flags = new TransactionFlags(matcher, book.getTransactionCount());
+		List<CompletableFuture<Void>> chunks = new ArrayList<CompletableFuture<Void>>();
+		for ( int from = 0; from < book.getTransactionCount(); from += CHUNK_SIZE ) {
+			final int chunkFrom = from;
+			final int chunkTo = Math.min(from + CHUNK_SIZE, book.getTransactionCount());
+			chunks.add(CompletableFuture.runAsync(new Runnable() {
+				public void run() {
+					flags.compute(book, chunkFrom, chunkTo);
+				}
+			}));
+		}
+		CompletableFuture.allOf(chunks.toArray(new CompletableFuture[chunks.size()])).join();
+		return flags;
+	}
+
+	private void compute(final CompactBook book, final int from, final int to) {
+		boolean hasKeywords = matcher.size() > 0;
+		for ( int trx = from; trx < to; trx++ ) {
+			long balance = 0;
+			long found = hasKeywords ? matcher.matchFirst(book.getTransactionMemo(trx)) : 0;
+			for ( int splt = book.getTransactionSplitStart(trx); splt < book.getTransactionSplitEnd(trx); splt++ ) {
+				balance += book.getSplitValue(splt);
+				if ( hasKeywords ) {
+					found |= matcher.matchFirst(book.getSplitMemo(splt));
+				}
+			}
+			if ( hasKeywords ) {
+				keywords[trx] = found;
+			}
+			int nofSplts = book.getTransactionSplitEnd(trx) - book.getTransactionSplitStart(trx);
+			if ( Math.abs(balance) * 2 > nofSplts ) {
+				unbalanced[trx >>> 6] |= 1L << trx;
+			}
+		}
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * @return the keywords the flags have been computed for
+	 */
+	public KeywordMatcher getMatcher() {
+		return matcher;
+	}
+
+	/**
+	 * @param trxOrd a transaction-ordinal of the compact book
+	 * @return the keywords found in the memos of the transaction and its splits
+	 *         (bit i set for keyword i of {@link #getMatcher()})
+	 */
+	public long getKeywords(final int trxOrd) {
+		return keywords.length == 0 ? 0 : keywords[trxOrd];
+	}
+
+	/**
+	 * @param trxOrd a transaction-ordinal of the compact book
+	 * @return whether the values of the transaction's splits do not add up to 0
+	 *         (up to rounding)
+	 */
+	public boolean isUnbalanced(final int trxOrd) {
+		return (unbalanced[trxOrd >>> 6] & (1L << trxOrd)) != 0;
+	}
+
+}
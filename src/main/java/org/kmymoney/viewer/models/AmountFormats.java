@@ -0,0 +1,101 @@
+package org.kmymoney.viewer.models;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.util.Currency;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.kmymoney.base.basetypes.complex.KMMQualifSecCurrID;
+import org.kmymoney.viewer.data.Amounts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared registry of the formats for amounts in a given currency/security,
+ * so that the table models do not have to create (and configure)
+ * a new NumberFormat for every single cell.
+ * <br>
+ * NumberFormats are not thread-safe, so every thread gets instances of its own.
+ * The registry itself may be used from any thread.
+ */
+public final class AmountFormats {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AmountFormats.class);
+
+	// One (per-thread) format per currency/security
+	private static final Map<KMMQualifSecCurrID, ThreadLocal<NumberFormat>> FORMATS =
+			new ConcurrentHashMap<KMMQualifSecCurrID, ThreadLocal<NumberFormat>>();
+
+	// For amounts without a known currency/security
+	private static final ThreadLocal<NumberFormat> NUMBER_FORMAT = new ThreadLocal<NumberFormat>() {
+		@Override
+		protected NumberFormat initialValue() {
+			return NumberFormat.getNumberInstance();
+		}
+	};
+
+	private AmountFormats() {
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * @param secCurr the currency/security (may be null)
+	 * @return the format for amounts in that currency/security.
+	 *         It must only be used by the calling thread.
+	 */
+	public static NumberFormat getFormat(final KMMQualifSecCurrID secCurr) {
+		if ( secCurr == null ) {
+			return NUMBER_FORMAT.get();
+		}
+
+		ThreadLocal<NumberFormat> format = FORMATS.get(secCurr);
+		if ( format == null ) {
+			format = new ThreadLocal<NumberFormat>() {
+				@Override
+				protected NumberFormat initialValue() {
+					return createFormat(secCurr);
+				}
+			};
+			ThreadLocal<NumberFormat> old = FORMATS.putIfAbsent(secCurr, format);
+			if ( old != null ) {
+				format = old;
+			}
+		}
+		return format.get();
+	}
+
+	/**
+	 * @param secCurr the currency/security (may be null)
+	 * @param units   an amount in units (cf. {@link Amounts})
+	 * @return the formatted amount
+	 */
+	public static String format(final KMMQualifSecCurrID secCurr, final long units) {
+		return getFormat(secCurr).format(Amounts.toBigDecimal(units));
+	}
+
+	/**
+	 * @param secCurr the currency/security (may be null)
+	 * @param amount  an amount
+	 * @return the formatted amount
+	 */
+	public static String format(final KMMQualifSecCurrID secCurr, final BigDecimal amount) {
+		return getFormat(secCurr).format(amount);
+	}
+
+	private static NumberFormat createFormat(final KMMQualifSecCurrID secCurr) {
+		try {
+			if ( secCurr.getType() == KMMQualifSecCurrID.Type.CURRENCY ) {
+				NumberFormat format = NumberFormat.getCurrencyInstance();
+				format.setCurrency(Currency.getInstance(secCurr.getCode()));
+				return format;
+			}
+		}
+		catch (Exception exc) {
+			LOGGER.warn("createFormat: Cannot create currency-format for " + secCurr, exc);
+		}
+		return NumberFormat.getNumberInstance();
+	}
+
+}
@@ -1,9 +1,6 @@
 package org.kmymoney.viewer.models;
 
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 import javax.swing.event.TreeModelEvent;
@@ -13,17 +10,21 @@ import javax.swing.tree.TreePath;
 
 import org.kmymoney.api.read.KMyMoneyAccount;
 import org.kmymoney.api.read.KMyMoneyFile;
+import org.kmymoney.viewer.data.AccountHierarchy;
+import org.kmymoney.viewer.data.BookIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /*
  * A TreeModel representing the accounts in a KMyMoney-File.
+ * The structure is taken from the file's (immutable) AccountHierarchy,
+ * so that all lookups take constant time.
  */
 public class KMyMoneyAccountsTreeModel implements TreeModel {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(KMyMoneyAccountsTreeModel.class);
 
-    public KMyMoneyAccountsTreeModel(final KMyMoneyFileImpl file) {
+    public KMyMoneyAccountsTreeModel(final KMyMoneyFileWithRoot file) {
         super();
         setFile(file);
     }
@@ -31,17 +32,24 @@ public class KMyMoneyAccountsTreeModel implements TreeModel {
     // The tree-root
     private KMyMoneyAccountTreeRootEntry rootEntry;
 
+    // The account-tree we show
+    private AccountHierarchy hierarchy;
+
+    // The tree-node of each node of the hierarchy
+    // (the one of AccountHierarchy.ROOT shows the file's dummy root account)
+    private KMyMoneyAccountTreeEntry[] entries;
+
     public static class KMyMoneyAccountTreeRootEntry extends KMyMoneyAccountTreeEntry {
 
         // where we get our data from.
-        private final KMyMoneyFileImpl file;
+        private final KMyMoneyFileWithRoot file;
 
-        public KMyMoneyAccountTreeRootEntry(final KMyMoneyFileImpl aFile) {
-            super(getRootAccount(aFile));
+        public KMyMoneyAccountTreeRootEntry(final KMyMoneyFileWithRoot aFile) {
+            super(getRootAccount(aFile), AccountHierarchy.NO_NODE);
             file = aFile;
         }
 
-        private static KMyMoneyAccount getRootAccount(final KMyMoneyFileImpl aFile) {
+        private static KMyMoneyAccount getRootAccount(final KMyMoneyFileWithRoot aFile) {
             if (aFile == null) {
                 throw new IllegalArgumentException("argument <aFile> is null");
             }
@@ -56,20 +64,13 @@ public class KMyMoneyAccountsTreeModel implements TreeModel {
         }
 
         public KMyMoneyFile getFile() {
-            return file;
+            return file.getBook();
         }
 
         @Override
         public String toString() {
             return "";
         }
-
-        @Override
-        public List<? extends KMyMoneyAccount> getChildAccounts() {
-        	ArrayList result = new ArrayList<KMyMoneyAccount>();
-        	result.add( file.getRootAccount() );
-            return result;
-        }
     }
 
     public static class KMyMoneyAccountTreeEntry {
@@ -77,7 +78,10 @@ public class KMyMoneyAccountsTreeModel implements TreeModel {
         // The account we represent.
         private final KMyMoneyAccount myAccount;
 
-        public KMyMoneyAccountTreeEntry(final KMyMoneyAccount anAccount) {
+        // Our node in the account-hierarchy
+        private final int myNode;
+
+        public KMyMoneyAccountTreeEntry(final KMyMoneyAccount anAccount, final int aNode) {
             super();
             
             if (anAccount == null) {
@@ -85,12 +89,21 @@ public class KMyMoneyAccountsTreeModel implements TreeModel {
             }
             
             myAccount = anAccount;
+            myNode = aNode;
         }
 
         public KMyMoneyAccount getAccount() {
             return myAccount;
         }
 
+        /**
+         * @return our node in the {@link AccountHierarchy} 
+         *         ({@link AccountHierarchy#NO_NODE} for the tree-root)
+         */
+        public int getNode() {
+            return myNode;
+        }
+
         @Override
         public String toString() {
             String hidden = getAccount().getUserDefinedAttribute("hidden");
@@ -99,26 +112,6 @@ public class KMyMoneyAccountsTreeModel implements TreeModel {
             }
             return getAccount().getName();
         }
-
-        // The tree-nodes below us
-        private volatile List<KMyMoneyAccountTreeEntry> childTreeNodes = null;
-
-        public List<KMyMoneyAccountTreeEntry> getChildTreeNodes() {
-            if ( childTreeNodes == null ) {
-                Collection<? extends KMyMoneyAccount> c = getChildAccounts();
-                childTreeNodes = new ArrayList<KMyMoneyAccountTreeEntry>(c.size());
-                for ( KMyMoneyAccount kmymoneyAccount : c ) {
-                    KMyMoneyAccount subaccount = kmymoneyAccount;
-                    childTreeNodes.add(new KMyMoneyAccountTreeEntry(subaccount));
-                }
-            }
-
-            return childTreeNodes;
-        }
-
-        public Collection<? extends KMyMoneyAccount> getChildAccounts() {
-            return myAccount.getChildren();
-        }
     }
 
     public Object getRoot() {
@@ -126,7 +119,11 @@ public class KMyMoneyAccountsTreeModel implements TreeModel {
     }
 
     public int getChildCount(final Object parent) {
-    	return ((KMyMoneyAccountTreeEntry) parent).getChildTreeNodes().size();
+        int node = ((KMyMoneyAccountTreeEntry) parent).getNode();
+        if ( node == AccountHierarchy.NO_NODE ) {
+            return 1;
+        }
+        return hierarchy.getChildCount(node);
     }
 
     public boolean isLeaf(final Object node) {
@@ -145,11 +142,37 @@ public class KMyMoneyAccountsTreeModel implements TreeModel {
     }
 
     public Object getChild(final Object parent, final int index) {
-        return ((KMyMoneyAccountTreeEntry) parent).getChildTreeNodes().get(index);
+        int node = ((KMyMoneyAccountTreeEntry) parent).getNode();
+        if ( node == AccountHierarchy.NO_NODE ) {
+            if ( index != 0 ) {
+                throw new IndexOutOfBoundsException("the tree-root has no child no. " + index);
+            }
+            return entries[AccountHierarchy.ROOT];
+        }
+        return entries[hierarchy.getChild(node, index)];
     }
 
     public int getIndexOfChild(final Object parent, final Object child) {
-        return ((KMyMoneyAccountTreeEntry) parent).getChildTreeNodes().indexOf(child);
+        if ( ! (parent instanceof KMyMoneyAccountTreeEntry) ||
+             ! (child instanceof KMyMoneyAccountTreeEntry) ) {
+            return -1;
+        }
+
+        int parentNode = ((KMyMoneyAccountTreeEntry) parent).getNode();
+        int childNode = ((KMyMoneyAccountTreeEntry) child).getNode();
+        if ( childNode == AccountHierarchy.NO_NODE ||
+             childNode >= entries.length ||
+             entries[childNode] != child ) {
+            // not one of ours
+            return -1;
+        }
+        if ( parentNode == AccountHierarchy.NO_NODE ) {
+            return childNode == AccountHierarchy.ROOT ? 0 : -1;
+        }
+        if ( hierarchy.getParent(childNode) != parentNode ) {
+            return -1;
+        }
+        return hierarchy.getIndexInParent(childNode);
     }
 
     public void valueForPathChanged(final TreePath path, final Object newValue) {
@@ -160,12 +183,21 @@ public class KMyMoneyAccountsTreeModel implements TreeModel {
         return rootEntry.getFile();
     }
 
-    public void setFile(final KMyMoneyFileImpl file) {
+    public void setFile(final KMyMoneyFileWithRoot file) {
         if (file == null) {
             throw new IllegalArgumentException("argument <file> is null");
         }
         
         rootEntry = new KMyMoneyAccountTreeRootEntry(file);
+        // Never build the whole index just for the tree (we may be on the EDT)
+        BookIndex index = BookIndex.peek(file.getBook());
+        hierarchy = index == null ?
+                AccountHierarchy.of(file.getBook()) : index.getAccountHierarchy();
+        entries = new KMyMoneyAccountTreeEntry[hierarchy.getNodeCount()];
+        entries[AccountHierarchy.ROOT] = new KMyMoneyAccountTreeEntry(rootEntry.getAccount(), AccountHierarchy.ROOT);
+        for ( int node = AccountHierarchy.ROOT + 1; node < entries.length; node++ ) {
+            entries[node] = new KMyMoneyAccountTreeEntry(hierarchy.getAccount(node), node);
+        }
 
         fireTreeStructureChanged(getPathToRoot());
     }
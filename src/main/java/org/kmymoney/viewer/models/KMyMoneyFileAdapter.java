@@ -0,0 +1,54 @@
+package org.kmymoney.viewer.models;
+
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyFile;
+
+/**
+ * Wraps a KMyMoney file that has already been loaded into memory
+ * and supplies the dummy root element needed by the GUI.
+ * <br>
+ * As opposed to {@link KMyMoneyFileImpl}, this class does not 
+ * (re-)read the file from disk, so it can be used for books that
+ * have been loaded elsewhere without parsing them a second time.
+ * <br>
+ * The wrapped file cannot keep a {@link org.kmymoney.viewer.data.BookIndex}, 
+ * so the registers of its accounts and the sums over it do without.
+ */
+public class KMyMoneyFileAdapter implements KMyMoneyFileWithRoot
+{
+	private final KMyMoneyFile kmmFile;
+
+	// Created on first use, then always the same
+	private volatile KMyMoneyAccount dummyRoot = null;
+
+	// ---------------------------------------------------------------
+
+	public KMyMoneyFileAdapter(KMyMoneyFile kmmFile)
+	{
+		if ( kmmFile == null ) {
+			throw new IllegalArgumentException("argument <kmmFile> is null");
+		}
+
+		this.kmmFile = kmmFile;
+	}
+
+	// ---------------------------------------------------------------
+
+	@Override
+	public KMyMoneyFile getBook() {
+		return kmmFile;
+	}
+
+	@Override
+	public KMyMoneyAccount getRootAccount() {
+		if ( dummyRoot == null ) {
+			synchronized ( this ) {
+				if ( dummyRoot == null ) {
+					dummyRoot = KMyMoneyFileImpl.createDummyRoot(kmmFile);
+				}
+			}
+		}
+		return dummyRoot;
+	}
+
+}
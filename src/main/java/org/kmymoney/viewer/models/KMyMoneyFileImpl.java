@@ -8,16 +8,27 @@ import org.kmymoney.api.generated.ACCOUNT;
 import org.kmymoney.api.read.KMyMoneyAccount;
 import org.kmymoney.api.read.KMyMoneyFile;
 import org.kmymoney.api.read.impl.KMyMoneyAccountImpl;
+import org.kmymoney.viewer.data.BookIndex;
 
 /**
  * Hack: By introducing this class with a re-implemented getRootAccount() method,
  * we have a dummy root element that is needed by the GUI.
  * (KMyMoney internally does not have a root account, as opposed to GnuCash).
+ * <br>
+ * For files that have already been loaded, use {@link KMyMoneyFileAdapter}
+ * instead -- this class always parses the file.
  */
 public class KMyMoneyFileImpl extends org.kmymoney.api.read.impl.KMyMoneyFileImpl
+                              implements KMyMoneyFileWithRoot, BookIndex.Holder
 {
 	private static String DUMMY_ROOT_ACCT_ID = "A000000";
 
+	// Created on first use, then always the same
+	private volatile KMyMoneyAccount dummyRoot = null;
+
+	// Set when the file has been indexed
+	private volatile BookIndex bookIndex = null;
+
 	// ---------------------------------------------------------------
 
 	public KMyMoneyFileImpl(File pFile) throws IOException
@@ -25,29 +36,51 @@ public class KMyMoneyFileImpl extends org.kmymoney.api.read.impl.KMyMoneyFileImp
 		super( pFile );
 	}
 
-	public KMyMoneyFileImpl(KMyMoneyFile kmmFile) throws IOException
-	{
-		super( kmmFile.getFile() );
-	}
-	
 	// ---------------------------------------------------------------
 
+	@Override
+	public KMyMoneyFile getBook() {
+		return this;
+	}
+
+	@Override
+	public BookIndex getBookIndex() {
+		return bookIndex;
+	}
+
+	@Override
+	public void setBookIndex(final BookIndex index) {
+		bookIndex = index;
+	}
+
 	@Override
     public KMyMoneyAccount getRootAccount() {
+		if ( dummyRoot == null ) {
+			synchronized ( this ) {
+				if ( dummyRoot == null ) {
+					dummyRoot = createDummyRoot(getKMyMoneyFile());
+				}
+			}
+		}
+		return dummyRoot;
+    }
+
+	/**
+	 * The dummy root element is not linked with the top-level accounts
+	 * (their JAXB-peers are left untouched). The GUI takes the structure
+	 * of the account-tree from {@link org.kmymoney.viewer.data.AccountHierarchy}.
+	 * 
+	 * @param kmmFile the file to create the dummy root element for
+	 * @return a new dummy root element for the given file
+	 */
+	static KMyMoneyAccount createDummyRoot(final KMyMoneyFile kmmFile) {
 		ACCOUNT jwsdpDummyRoot = new ACCOUNT();
 		jwsdpDummyRoot.setId(DUMMY_ROOT_ACCT_ID);
 		jwsdpDummyRoot.setName("DUMMY ROOT");
 		jwsdpDummyRoot.setDescription("Dummy root element");
 		jwsdpDummyRoot.setType( BigInteger.ZERO );
 		
-		KMyMoneyAccount dummyRoot = new KMyMoneyAccountImpl(jwsdpDummyRoot, getKMyMoneyFile());
-
-		for ( KMyMoneyAccount topLevAcct : getTopAccounts() ) {
-			((KMyMoneyAccountImpl) topLevAcct).getJwsdpPeer()
-				.setParentaccount( DUMMY_ROOT_ACCT_ID );
-		}
-    	
-    	return dummyRoot;
-    }
+		return new KMyMoneyAccountImpl(jwsdpDummyRoot, kmmFile);
+	}
 
 }
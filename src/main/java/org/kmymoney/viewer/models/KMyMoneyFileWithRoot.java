@@ -0,0 +1,25 @@
+package org.kmymoney.viewer.models;
+
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyFile;
+
+/**
+ * A KMyMoney file together with the dummy root element that is needed by the GUI.
+ * (KMyMoney internally does not have a root account, as opposed to GnuCash).
+ * 
+ * @see KMyMoneyFileImpl
+ * @see KMyMoneyFileAdapter
+ */
+public interface KMyMoneyFileWithRoot {
+
+	/**
+	 * @return the (already loaded) file the accounts, transactions etc. belong to
+	 */
+	KMyMoneyFile getBook();
+
+	/**
+	 * @return the dummy root element above the top-level accounts
+	 */
+	KMyMoneyAccount getRootAccount();
+
+}
@@ -0,0 +1,543 @@
+package org.kmymoney.viewer.models;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.event.TableModelListener;
+
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.kmymoney.base.basetypes.complex.KMMQualifSecCurrID;
+import org.kmymoney.viewer.data.AccountCounterparts;
+import org.kmymoney.viewer.data.BookIndex;
+import org.kmymoney.viewer.data.CompactBook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A TableModel that shows the transactions and balance of an account
+ * with (very) many splits, like {@link KMyMoneySimpleAccountTransactionsTableModel},
+ * but without ever looking at all of them.
+ * <br>
+ * Row count, sort keys and aggregates come from the {@link CompactBook} of the file
+ * and the indexes built on top of it.
+ * The rows are rendered page by page, only for the pages the table actually
+ * asks for (i.e. the ones around the viewport), and only the most recently
+ * used pages are kept. Split-objects of the API are looked up only for
+ * the rows they are asked for.
+ * <br>
+ * Instead of an account's splits, it can show any list of splits given by their
+ * ordinals (e.g. the ones a {@link org.kmymoney.viewer.widgets.TransactionSum} is made of).
+ * <br>
+ * The model never builds the {@link BookIndex} of the file itself (it is created
+ * on the event-dispatch-thread); the index must have been built before.
+ */
+public class KMyMoneyPagedAccountTransactionsTableModel implements KMyMoneyTransactionSplitsTableModel {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(KMyMoneyPagedAccountTransactionsTableModel.class);
+
+	/**
+	 * Accounts with at least that many splits are shown with this model.
+	 */
+	// ::MAGIC
+	public static final int MIN_SPLITS = 10000;
+
+	// ::MAGIC
+	private static final int PAGE_SIZE = 256;
+	private static final int MAX_PAGES = 16;
+
+	// A running balance that cannot be given because the splits are in different currencies
+	private static final long NO_BALANCE = Long.MIN_VALUE;
+
+	enum TableCols {
+		DATE,
+		TRANSACTION,
+		DESCRIPTION,
+		PLUS,
+		MINUS,
+		BALANCE
+	}
+
+	// The account the transactions of which we are showing.
+	private final KMyMoneyAccount account;
+
+	// Where we take the rows from
+	private final BookIndex index;
+	private final CompactBook book;
+	private final int acctOrd;
+
+	// Our rows are the account's splits start .. start + rowCount - 1 (cf. CompactBook.getAccountSplitAt)
+	// or, if given, the splits of splitOrdinals (ascending)
+	private final int start;
+	private final int rowCount;
+	private final int[] splitOrdinals;
+
+	private final KMMQualifSecCurrID secCurr;
+
+	// The balance of the account after each split (in units), computed on first use
+	private long[] myRunningBalances = null;
+
+	// The rendered pages (least recently used first)
+	private final Map<Integer, String[][]> myPages = new LinkedHashMap<Integer, String[][]>(MAX_PAGES * 2, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Integer, String[][]> eldest) {
+			return size() > MAX_PAGES;
+		}
+	};
+
+	// Aggregates, computed on first use
+	private Collection<KMyMoneyAccount> myAccountsOfAllRows = null;
+	private final Map<Integer, long[]> myValueSums = new HashMap<Integer, long[]>();
+
+	// The columns we display.
+	private final String[] defaultColumnNames = new String[] {
+			Messages_KMyMoneySimpleAccountTransactionsTableModel.getString("KMyMoneySimpleAccountTransactionsTableModel.1"),
+			Messages_KMyMoneySimpleAccountTransactionsTableModel.getString("KMyMoneySimpleAccountTransactionsTableModel.2"),
+			Messages_KMyMoneySimpleAccountTransactionsTableModel.getString("KMyMoneySimpleAccountTransactionsTableModel.3"),
+			Messages_KMyMoneySimpleAccountTransactionsTableModel.getString("KMyMoneySimpleAccountTransactionsTableModel.4"),
+			Messages_KMyMoneySimpleAccountTransactionsTableModel.getString("KMyMoneySimpleAccountTransactionsTableModel.5"),
+			Messages_KMyMoneySimpleAccountTransactionsTableModel.getString("KMyMoneySimpleAccountTransactionsTableModel.6")
+		};
+
+	/**
+	 * @param anAccount the account the splits of which to display.
+	 */
+	public KMyMoneyPagedAccountTransactionsTableModel(final KMyMoneyAccount anAccount) {
+		super();
+
+		if ( anAccount == null ) {
+			throw new IllegalArgumentException("argument <anAccount> is null");
+		}
+
+		account = anAccount;
+		index = getIndex(anAccount);
+		book = index.getCompactBook();
+		acctOrd = index.getAccountOrdinal(anAccount);
+		if ( acctOrd == CompactBook.NO_ACCOUNT ) {
+			start = 0;
+			rowCount = 0;
+		} else {
+			start = book.getAccountSplitStart(acctOrd);
+			rowCount = book.getAccountSplitEnd(acctOrd) - start;
+		}
+		splitOrdinals = null;
+		secCurr = anAccount.getQualifSecCurrID();
+	}
+
+	/**
+	 * @param anAccount     the account whose currency the balance is shown in
+	 * @param someSplitOrds the split-ordinals (in the compact book of the account's file)
+	 *                      of the splits to display, ascending (i.e. in the order of their transactions)
+	 */
+	public KMyMoneyPagedAccountTransactionsTableModel(final KMyMoneyAccount anAccount, final int[] someSplitOrds) {
+		super();
+
+		if ( anAccount == null ) {
+			throw new IllegalArgumentException("argument <anAccount> is null");
+		}
+
+		if ( someSplitOrds == null ) {
+			throw new IllegalArgumentException("argument <someSplitOrds> is null");
+		}
+
+		account = anAccount;
+		index = getIndex(anAccount);
+		book = index.getCompactBook();
+		acctOrd = index.getAccountOrdinal(anAccount);
+		start = 0;
+		rowCount = someSplitOrds.length;
+		splitOrdinals = someSplitOrds;
+		secCurr = anAccount.getQualifSecCurrID();
+	}
+
+	private static BookIndex getIndex(final KMyMoneyAccount anAccount) {
+		BookIndex idx = BookIndex.peek(anAccount.getKMyMoneyFile());
+		if ( idx == null ) {
+			throw new IllegalStateException("The file of account " + anAccount.getID() + " has not been indexed yet");
+		}
+		return idx;
+	}
+
+	/**
+	 * @param anAccount an account
+	 * @return true if the account has so many splits that it
+	 *         should be shown with this model (false as long as 
+	 *         the file has not been indexed)
+	 */
+	public static boolean isLarge(final KMyMoneyAccount anAccount) {
+		BookIndex idx = BookIndex.peek(anAccount.getKMyMoneyFile());
+		if ( idx == null ) {
+			return false;
+		}
+		int ord = idx.getAccountOrdinal(anAccount);
+		if ( ord == CompactBook.NO_ACCOUNT ) {
+			return false;
+		}
+		CompactBook cb = idx.getCompactBook();
+		return cb.getAccountSplitEnd(ord) - cb.getAccountSplitStart(ord) >= MIN_SPLITS;
+	}
+
+	public KMyMoneyAccount getAccount() {
+		return account;
+	}
+
+	/**
+	 * @return the split-ordinal (in the compact book) of the row
+	 */
+	public int getSplitOrdinal(final int rowIndex) {
+		if ( splitOrdinals != null ) {
+			return splitOrdinals[rowIndex];
+		}
+		return book.getAccountSplitAt(start + rowIndex);
+	}
+
+	/**
+	 * @return the currency/security of the split's account
+	 */
+	private KMMQualifSecCurrID getSecCurr(final int splt) {
+		if ( splitOrdinals == null ) {
+			return secCurr;
+		}
+		return index.getAccount(book.getSplitAccount(splt)).getQualifSecCurrID();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getColumnCount() {
+		return defaultColumnNames.length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean isCellEditable(final int rowIndex, final int columnIndex) {
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Class getColumnClass(final int columnIndex) {
+		return String.class;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public KMyMoneyTransactionSplit getTransactionSplit(final int rowIndex) {
+		return index.getSplit(getSplitOrdinal(rowIndex));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Object getValueAt(final int rowIndex, final int columnIndex) {
+		String[][] page = getPage(rowIndex / PAGE_SIZE);
+		return page[columnIndex][rowIndex % PAGE_SIZE];
+	}
+
+	private String[][] getPage(final int pageNo) {
+		String[][] page = myPages.get(pageNo);
+		if ( page == null ) {
+			page = renderPage(pageNo);
+			myPages.put(pageNo, page);
+		}
+		return page;
+	}
+
+	private String[][] renderPage(final int pageNo) {
+		int first = pageNo * PAGE_SIZE;
+		int count = Math.min(PAGE_SIZE, rowCount - first);
+		String[][] page = new String[TableCols.values().length][count];
+		long[] balances = getRunningBalances();
+
+		for ( int i = 0; i < count; i++ ) {
+			int row = first + i;
+			int splt = getSplitOrdinal(row);
+			int trx = book.getSplitTransaction(splt);
+			long shares = book.getSplitShares(splt);
+
+			KMyMoneyTransaction apiTrx = index.getTransaction(trx);
+			page[TableCols.DATE.ordinal()][i] = apiTrx == null ? "" : apiTrx.getDatePostedFormatted();
+			page[TableCols.TRANSACTION.ordinal()][i] = normalize(book.getTransactionMemo(trx));
+			page[TableCols.DESCRIPTION.ordinal()][i] = normalize(book.getSplitMemo(splt));
+			String sharesStr = AmountFormats.format(getSecCurr(splt), shares);
+			page[TableCols.PLUS.ordinal()][i] = shares > 0 ? sharesStr : "";
+			page[TableCols.MINUS.ordinal()][i] = shares > 0 ? "" : sharesStr;
+			page[TableCols.BALANCE.ordinal()][i] = balances[row] == NO_BALANCE ?
+					"" : AmountFormats.format(secCurr, balances[row]);
+		}
+
+		LOGGER.debug("renderPage: Rendered page " + pageNo + " (" + count + " rows)");
+		return page;
+	}
+
+	private static String normalize(final String str) {
+		if ( str == null ||
+			 str.trim().length() == 0 ) {
+			return "";
+		}
+		return str;
+	}
+
+	/**
+	 * @return the running balances (in units) of all rows
+	 *         ({@link #NO_BALANCE} from the first split in another currency on)
+	 */
+	protected long[] getRunningBalances() {
+		if ( myRunningBalances == null ) {
+			long[] balances = new long[rowCount];
+			long balance = 0;
+			boolean sameCurrency = true;
+			for ( int row = 0; row < rowCount; row++ ) {
+				int splt = getSplitOrdinal(row);
+				sameCurrency = sameCurrency && secCurr.equals(getSecCurr(splt));
+				balance += book.getSplitShares(splt);
+				balances[row] = sameCurrency ? balance : NO_BALANCE;
+			}
+			myRunningBalances = balances;
+		}
+		return myRunningBalances;
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getTransactionOrdinal(final int rowIndex) {
+		return book.getSplitTransaction(getSplitOrdinal(rowIndex));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * As the rows' splits follow the order of the transactions in the 
+	 * compact book, the row is found by a binary search.
+	 */
+	@Override
+	public int getRowOfTransaction(final KMyMoneyTransaction trx) {
+		int trxOrd = book.getTransactionOrdinal(trx.getID().toString());
+		if ( trxOrd < 0 ) {
+			return -1;
+		}
+
+		// first row with a transaction-ordinal >= trxOrd
+		int lo = 0;
+		int hi = rowCount;
+		while ( lo < hi ) {
+			int mid = (lo + hi) >>> 1;
+			if ( book.getSplitTransaction(getSplitOrdinal(mid)) < trxOrd ) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+
+		if ( lo < rowCount &&
+			 book.getSplitTransaction(getSplitOrdinal(lo)) == trxOrd ) {
+			return lo;
+		}
+		return -1;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public RegisterRowSorter.RowComparator getRowComparator(final int columnIndex) {
+		if ( columnIndex == TableCols.DATE.ordinal() ) {
+			return new RegisterRowSorter.RowComparator() {
+				public int compare(final int row1, final int row2) {
+					return Integer.compare(book.getTransactionDate(book.getSplitTransaction(getSplitOrdinal(row1))),
+							               book.getTransactionDate(book.getSplitTransaction(getSplitOrdinal(row2))));
+				}
+			};
+		} else if ( columnIndex == TableCols.TRANSACTION.ordinal() ) {
+			return new RegisterRowSorter.RowComparator() {
+				public int compare(final int row1, final int row2) {
+					return String.CASE_INSENSITIVE_ORDER.compare(normalize(book.getTransactionMemo(book.getSplitTransaction(getSplitOrdinal(row1)))),
+							                                     normalize(book.getTransactionMemo(book.getSplitTransaction(getSplitOrdinal(row2)))));
+				}
+			};
+		} else if ( columnIndex == TableCols.DESCRIPTION.ordinal() ) {
+			return new RegisterRowSorter.RowComparator() {
+				public int compare(final int row1, final int row2) {
+					return String.CASE_INSENSITIVE_ORDER.compare(normalize(book.getSplitMemo(getSplitOrdinal(row1))),
+							                                     normalize(book.getSplitMemo(getSplitOrdinal(row2))));
+				}
+			};
+		} else if ( columnIndex == TableCols.PLUS.ordinal() ||
+				    columnIndex == TableCols.MINUS.ordinal() ) {
+			return new RegisterRowSorter.RowComparator() {
+				public int compare(final int row1, final int row2) {
+					return Long.compare(book.getSplitShares(getSplitOrdinal(row1)), book.getSplitShares(getSplitOrdinal(row2)));
+				}
+			};
+		} else if ( columnIndex == TableCols.BALANCE.ordinal() ) {
+			final long[] balances = getRunningBalances();
+			return new RegisterRowSorter.RowComparator() {
+				public int compare(final int row1, final int row2) {
+					return Long.compare(balances[row1], balances[row2]);
+				}
+			};
+		}
+
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * For an account's splits, they are taken from the {@link AccountCounterparts}
+	 * of the file. For a list of splits, the rows (not the API's objects) are looked at.
+	 */
+	@Override
+	public Collection<KMyMoneyAccount> getAccountsOfAllRows() {
+		if ( myAccountsOfAllRows == null ) {
+			Set<Integer> acctOrds = new HashSet<Integer>();
+			if ( splitOrdinals == null ) {
+				if ( acctOrd != CompactBook.NO_ACCOUNT ) {
+					AccountCounterparts counterparts = index.getAccountCounterparts();
+					for ( int i = 0; i < counterparts.getCounterpartCount(acctOrd); i++ ) {
+						acctOrds.add(counterparts.getCounterpart(acctOrd, i));
+					}
+				}
+			} else {
+				int lastTrx = -1;
+				for ( int row = 0; row < rowCount; row++ ) {
+					int trx = book.getSplitTransaction(getSplitOrdinal(row));
+					if ( trx == lastTrx ) {
+						continue;
+					}
+					lastTrx = trx;
+					for ( int splt = book.getTransactionSplitStart(trx); splt < book.getTransactionSplitEnd(trx); splt++ ) {
+						acctOrds.add(book.getSplitAccount(splt));
+					}
+				}
+			}
+
+			List<KMyMoneyAccount> result = new ArrayList<KMyMoneyAccount>(acctOrds.size());
+			for ( int ord : acctOrds ) {
+				KMyMoneyAccount acct = ord == CompactBook.NO_ACCOUNT ? null : index.getAccount(ord);
+				if ( acct != null ) {
+					result.add(acct);
+				}
+			}
+			myAccountsOfAllRows = result;
+		}
+		return myAccountsOfAllRows;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * Like {@link #getAccountsOfAllRows()}, only a list of splits is summed up row by row.
+	 */
+	@Override
+	public long[] getValueSums(final KMyMoneyAccount acct) {
+		int filterOrd = acct == null ? CompactBook.NO_ACCOUNT : index.getAccountOrdinal(acct);
+		if ( acct != null && filterOrd == CompactBook.NO_ACCOUNT ) {
+			// an account the compact book does not know
+			return new long[2];
+		}
+
+		long[] sums = myValueSums.get(filterOrd);
+		if ( sums == null ) {
+			if ( splitOrdinals == null ) {
+				// (the account's own splits are those of its transactions in the account)
+				sums = acctOrd == CompactBook.NO_ACCOUNT ?
+						new long[2] :
+						index.getAccountCounterparts().getValueSums(acctOrd, acct == null ? acctOrd : filterOrd);
+			} else {
+				sums = new long[2];
+				int lastTrx = -1;
+				for ( int row = 0; row < rowCount; row++ ) {
+					int splt = getSplitOrdinal(row);
+					if ( acct == null ) {
+						addValue(sums, book.getSplitValue(splt));
+						continue;
+					}
+
+					// Each transaction only once
+					int trx = book.getSplitTransaction(splt);
+					if ( trx == lastTrx ) {
+						continue;
+					}
+					lastTrx = trx;
+					for ( int s = book.getTransactionSplitStart(trx); s < book.getTransactionSplitEnd(trx); s++ ) {
+						if ( book.getSplitAccount(s) == filterOrd ) {
+							addValue(sums, book.getSplitValue(s));
+						}
+					}
+				}
+			}
+			myValueSums.put(filterOrd, sums);
+		}
+		return sums;
+	}
+
+	private static void addValue(final long[] sums, final long value) {
+		if ( value > 0 ) {
+			sums[0] += value;
+		} else {
+			sums[1] += value;
+		}
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setValueAt(final Object aValue, final int rowIndex, final int columnIndex) {
+		// ::EMPTY
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getColumnName(final int columnIndex) {
+		return defaultColumnNames[columnIndex];
+	}
+
+	/**
+	 * @see #addTableModelListener(TableModelListener)
+	 */
+	private final Set<TableModelListener> myTableModelListeners = new HashSet<TableModelListener>();
+
+	/**
+	 *
+	 * @see javax.swing.table.TableModel#addTableModelListener(javax.swing.event.TableModelListener)
+	 */
+	public void addTableModelListener(final TableModelListener l) {
+		myTableModelListeners.add(l);
+	}
+
+	/**
+	 *
+	 * @see javax.swing.table.TableModel#removeTableModelListener(javax.swing.event.TableModelListener)
+	 */
+	public void removeTableModelListener(final TableModelListener l) {
+		myTableModelListeners.remove(l);
+	}
+
+}
@@ -4,7 +4,6 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.NumberFormat;
 import java.time.format.DateTimeFormatter;
-import java.util.Currency;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -14,8 +13,10 @@ import javax.swing.JOptionPane;
 import javax.swing.event.TableModelListener;
 
 import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyTransaction;
 import org.kmymoney.api.read.KMyMoneyTransactionSplit;
-import org.kmymoney.base.basetypes.complex.KMMQualifSecCurrID;
+import org.kmymoney.viewer.data.Amounts;
+import org.kmymoney.viewer.data.BookIndex;
 
 /**
  * A TableModel that shows the transaction and balance of an Account.
@@ -34,6 +35,20 @@ public class KMyMoneySimpleAccountTransactionsTableModel implements KMyMoneyTran
 	// The account the transactions of which we are showing.
 	private final KMyMoneyAccount account;
 
+	// The splits of the account (fetched once, as the account does not change)
+	private List<? extends KMyMoneyTransactionSplit> mySplits = null;
+
+	// The same splits, materialized into columns
+	private RegisterColumns myColumns = null;
+
+	// The balance of the account after each split (in units, cf. Amounts),
+	// computed once in the order of the splits
+	private long[] myRunningBalances = null;
+
+	// Formatted shares and balances per row (filled as rows are shown)
+	private String[] mySharesStrings = null;
+	private String[] myBalanceStrings = null;
+
 	// The columns we display.
 	private final String[] defaultColumnNames = new String[] {
 			Messages_KMyMoneySimpleAccountTransactionsTableModel.getString("KMyMoneySimpleAccountTransactionsTableModel.1"), 
@@ -72,11 +87,7 @@ public class KMyMoneySimpleAccountTransactionsTableModel implements KMyMoneyTran
 	 * {@inheritDoc}
 	 */
 	public int getRowCount() {
-		List<? extends KMyMoneyTransactionSplit> transactionSplits = getTransactionSplits();
-		if ( transactionSplits == null ) {
-			return 0;
-		}
-		return transactionSplits.size();
+		return getColumns().getRowCount();
 	}
 
 	/**
@@ -86,7 +97,42 @@ public class KMyMoneySimpleAccountTransactionsTableModel implements KMyMoneyTran
 		if ( account == null ) {
 			return new LinkedList<KMyMoneyTransactionSplit>();
 		}
-		return account.getTransactionSplits();
+		if ( mySplits == null ) {
+			mySplits = account.getTransactionSplits();
+		}
+		return mySplits;
+	}
+
+	/**
+	 * @return the rows we show, materialized into columns
+	 */
+	public RegisterColumns getColumns() {
+		if ( myColumns == null ) {
+			myColumns = RegisterColumns.of(getTransactionSplits());
+		}
+		return myColumns;
+	}
+
+	/**
+	 * The balance of the account after each of its splits, i.e. the same as
+	 * <code>account.getBalance(split)</code>, but computed for all splits at once
+	 * instead of summing up all earlier splits for every single one.
+	 * 
+	 * @return the running balances (in units, cf. {@link Amounts}), 
+	 *         in the order of {@link #getTransactionSplits()}
+	 */
+	protected long[] getRunningBalances() {
+		if ( myRunningBalances == null ) {
+			RegisterColumns cols = getColumns();
+			long[] balances = new long[cols.getRowCount()];
+			long balance = 0;
+			for ( int row = 0; row < balances.length; row++ ) {
+				balance += cols.getShares(row);
+				balances[row] = balance;
+			}
+			myRunningBalances = balances;
+		}
+		return myRunningBalances;
 	}
 
 	/**
@@ -106,9 +152,6 @@ public class KMyMoneySimpleAccountTransactionsTableModel implements KMyMoneyTran
 	// How to format dates
 	public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ISO_DATE;
 	
-	// How to format currencies
-	private NumberFormat currencyFormat = NumberFormat.getCurrencyInstance();
-	
 	// How to format currencies
 	public static final NumberFormat DEFAULT_CURRENCY_FORMAT = NumberFormat.getCurrencyInstance();
 
@@ -119,8 +162,7 @@ public class KMyMoneySimpleAccountTransactionsTableModel implements KMyMoneyTran
 	 * @return the split
 	 */
 	public KMyMoneyTransactionSplit getTransactionSplit(final int rowIndex) {
-		KMyMoneyTransactionSplit split = getTransactionSplits().get(rowIndex);
-		return split;
+		return getColumns().getSplit(rowIndex);
 	}
 
 	/**
@@ -128,49 +170,35 @@ public class KMyMoneySimpleAccountTransactionsTableModel implements KMyMoneyTran
 	 */
 	public Object getValueAt(final int rowIndex, final int columnIndex) {
 		try {
-			KMyMoneyTransactionSplit split = getTransactionSplit(rowIndex);
-
-			updateCurrencyFormat(split);
+			RegisterColumns cols = getColumns();
 
 			if ( columnIndex == TableCols.DATE.ordinal() ) {
-				return split.getTransaction().getDatePostedFormatted();
+				return cols.getDateText(rowIndex);
 			} else if ( columnIndex == TableCols.TRANSACTION.ordinal() ) {
-				String desc = split.getTransaction().getMemo();
-				if (desc == null || desc.trim().length() == 0) {
-					return "";
-				}
-				return desc;
+				return cols.getTransactionMemo(rowIndex);
 			} else if ( columnIndex == TableCols.DESCRIPTION.ordinal() ) {
-				String desc = split.getMemo();
-				if (desc == null || desc.trim().length() == 0) {
-					return "";
-				}
-				return desc;
+				return cols.getMemo(rowIndex);
 			} else if ( columnIndex == TableCols.PLUS.ordinal() ) {
-				if ( split.getShares().isPositive() ) {
+				if ( cols.getShares(rowIndex) > 0 ) {
 					//                  //T O D O: use default-currency here
 					//                  if (account != null && !account.getCurrencyID().equals("EUR")) {
 					//                      return split.getValueFormatet();
 					//                  }
-					return currencyFormat.format(split.getShares());
+					return getSharesString(rowIndex);
 				} else {
 					return "";
 				}
 			} else if ( columnIndex == TableCols.MINUS.ordinal() ) {
-				if ( ! split.getShares().isPositive() ) {
+				if ( cols.getShares(rowIndex) <= 0 ) {
 					//                    if (account != null && !account.getCurrencyID().equals("EUR")) {
 					//                        return split.getValueFormatet();
 					//                    }
-					return currencyFormat.format(split.getShares());
+					return getSharesString(rowIndex);
 				} else {
 					return "";
 				}
 			} else if ( columnIndex == TableCols.BALANCE.ordinal() ) {
-				if ( account != null ) {
-					return currencyFormat.format(account.getBalance(split));
-				} else {
-					return currencyFormat.format(split.getAccount().getBalance(split));
-				}
+				return getBalanceString(rowIndex);
 			} else {
 				throw new IllegalArgumentException("illegal column index " + columnIndex);
 			}
@@ -202,21 +230,103 @@ public class KMyMoneySimpleAccountTransactionsTableModel implements KMyMoneyTran
 	}
 
 	/**
-	 * @param split the split whos account to use for the currency
+	 * {@inheritDoc}
 	 */
-	private void updateCurrencyFormat(final KMyMoneyTransactionSplit split) {
-		currencyFormat = NumberFormat.getNumberInstance();
-		try {
-			if ( split.getAccount().getQualifSecCurrID().getType() == KMMQualifSecCurrID.Type.CURRENCY ) {
-				Currency currency = Currency.getInstance(split.getAccount().getQualifSecCurrID().getCode());
-				currencyFormat = NumberFormat.getCurrencyInstance();
-				currencyFormat.setCurrency(currency);
-			}
+	@Override
+	public int getRowOfTransaction(final KMyMoneyTransaction trx) {
+		return getColumns().getFirstRow(trx.getID().toString());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getTransactionOrdinal(final int rowIndex) {
+		if ( account == null ) {
+			return -1;
+		}
+		// Never build the index here (we may be on the EDT)
+		BookIndex index = BookIndex.peek(account.getKMyMoneyFile());
+		if ( index == null ) {
+			return -1;
+		}
+		return getColumns().getBookOrdinal(rowIndex, index.getCompactBook());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public RegisterRowSorter.RowComparator getRowComparator(final int columnIndex) {
+		final RegisterColumns cols = getColumns();
+		if ( columnIndex == TableCols.DATE.ordinal() ) {
+			return new RegisterRowSorter.RowComparator() {
+				public int compare(final int row1, final int row2) {
+					return Integer.compare(cols.getDate(row1), cols.getDate(row2));
+				}
+			};
+		} else if ( columnIndex == TableCols.TRANSACTION.ordinal() ) {
+			return new RegisterRowSorter.RowComparator() {
+				public int compare(final int row1, final int row2) {
+					return String.CASE_INSENSITIVE_ORDER.compare(cols.getTransactionMemo(row1), cols.getTransactionMemo(row2));
+				}
+			};
+		} else if ( columnIndex == TableCols.DESCRIPTION.ordinal() ) {
+			return new RegisterRowSorter.RowComparator() {
+				public int compare(final int row1, final int row2) {
+					return String.CASE_INSENSITIVE_ORDER.compare(cols.getMemo(row1), cols.getMemo(row2));
+				}
+			};
+		} else if ( columnIndex == TableCols.PLUS.ordinal() ||
+				    columnIndex == TableCols.MINUS.ordinal() ) {
+			return new RegisterRowSorter.RowComparator() {
+				public int compare(final int row1, final int row2) {
+					return Long.compare(cols.getShares(row1), cols.getShares(row2));
+				}
+			};
+		} else if ( columnIndex == TableCols.BALANCE.ordinal() ) {
+			final long[] balances = getRunningBalances();
+			return new RegisterRowSorter.RowComparator() {
+				public int compare(final int row1, final int row2) {
+					return Long.compare(balances[row1], balances[row2]);
+				}
+			};
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param rowIndex the row of the split
+	 * @return the split's shares, formatted in the currency/security of its account
+	 */
+	private String getSharesString(final int rowIndex) {
+		if ( mySharesStrings == null ) {
+			mySharesStrings = new String[getRowCount()];
+		}
+		String str = mySharesStrings[rowIndex];
+		if ( str == null ) {
+			RegisterColumns cols = getColumns();
+			str = AmountFormats.format(cols.getSecCurr(rowIndex), cols.getShares(rowIndex));
+			mySharesStrings[rowIndex] = str;
+		}
+		return str;
+	}
+
+	/**
+	 * @param rowIndex the row of the split
+	 * @return the account's balance after the split, formatted in the currency/security of the account
+	 */
+	private String getBalanceString(final int rowIndex) {
+		if ( myBalanceStrings == null ) {
+			myBalanceStrings = new String[getRowCount()];
 		}
-		catch (Exception e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		String str = myBalanceStrings[rowIndex];
+		if ( str == null ) {
+			str = AmountFormats.format(account.getQualifSecCurrID(), getRunningBalances()[rowIndex]);
+			myBalanceStrings[rowIndex] = str;
 		}
+		return str;
 	}
 
 	/**
@@ -4,7 +4,6 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.DateFormat;
 import java.text.NumberFormat;
-import java.util.Currency;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -13,8 +12,10 @@ import java.util.Set;
 import javax.swing.JOptionPane;
 import javax.swing.event.TableModelListener;
 
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyTransaction;
 import org.kmymoney.api.read.KMyMoneyTransactionSplit;
-import org.kmymoney.base.basetypes.complex.KMMQualifSecCurrID;
+import org.kmymoney.viewer.data.BookIndex;
 
 /**
  * A TableModel that shows a given list of transaction.
@@ -36,6 +37,12 @@ public class KMyMoneySimpleTransactionSplitsTableModel implements KMyMoneyTransa
 
 	private final List<? extends KMyMoneyTransactionSplit> mySplits;
 
+	// The same splits, materialized into columns
+	private RegisterColumns myColumns = null;
+
+	// Formatted shares per row (filled as rows are shown)
+	private String[] mySharesStrings = null;
+
 
     // The columns we display.
     private final String[] defaultColumnNames = new String[] {
@@ -74,11 +81,7 @@ public class KMyMoneySimpleTransactionSplitsTableModel implements KMyMoneyTransa
      * {@inheritDoc}
      */
     public int getRowCount() {
-        List<? extends KMyMoneyTransactionSplit> transactionSplits = getTransactionSplits();
-        if (transactionSplits == null) {
-            return 0;
-        }
-        return transactionSplits.size();
+        return getColumns().getRowCount();
     }
 
     /**
@@ -92,6 +95,16 @@ public class KMyMoneySimpleTransactionSplitsTableModel implements KMyMoneyTransa
         return mySplits;
     }
 
+    /**
+     * @return the rows we show, materialized into columns
+     */
+    public RegisterColumns getColumns() {
+        if ( myColumns == null ) {
+            myColumns = RegisterColumns.of(mySplits);
+        }
+        return myColumns;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -110,9 +123,6 @@ public class KMyMoneySimpleTransactionSplitsTableModel implements KMyMoneyTransa
     // How to format dates.
     public static final DateFormat dateFormat = DateFormat.getDateInstance(DateFormat.SHORT);
     
-    // How to format currencies.
-    private  NumberFormat currencyFormat = NumberFormat.getCurrencyInstance();
-    
     // How to format currencies.
     public static final NumberFormat defaultCurrencyFormat = NumberFormat.getCurrencyInstance();
 
@@ -124,8 +134,7 @@ public class KMyMoneySimpleTransactionSplitsTableModel implements KMyMoneyTransa
      * @return the split
      */
     public KMyMoneyTransactionSplit getTransactionSplit(final int rowIndex) {
-        KMyMoneyTransactionSplit split = getTransactionSplits().get(rowIndex);
-        return split;
+        return getColumns().getSplit(rowIndex);
     }
 
     /**
@@ -133,42 +142,30 @@ public class KMyMoneySimpleTransactionSplitsTableModel implements KMyMoneyTransa
      */
     public Object getValueAt(final int rowIndex, final int columnIndex) {
         try {
-            KMyMoneyTransactionSplit split = getTransactionSplit(rowIndex);
-
-            updateCurrencyFormat(split);
+            RegisterColumns cols = getColumns();
 
             if ( columnIndex == TableCols.DATE.ordinal() ) {
-                return split.getTransaction().getDatePostedFormatted();
+                return cols.getDateText(rowIndex);
             } else if ( columnIndex == TableCols.TRANSACTION.ordinal() ) {
-            	String desc = split.getTransaction().getMemo();
-                if ( desc == null ||
-                	 desc.trim().length() == 0 ) {
-                    return "";
-                }
-                return desc;
+                return cols.getTransactionMemo(rowIndex);
             } else if ( columnIndex == TableCols.DESCRIPTION.ordinal() ) {
-                String desc = split.getMemo();
-                if ( desc == null ||
-                	 desc.trim().length() == 0 ) {
-                    return "";
-                }
-                return desc;
+                return cols.getMemo(rowIndex);
             } else if ( columnIndex == TableCols.PLUS.ordinal() ) {
-            	if ( split.getShares().isPositive() ) {
+            	if ( cols.getShares(rowIndex) > 0 ) {
 //                  //T O D O: use default-currency here
 //                  if (account != null && !account.getCurrencyID().equals("EUR")) {
 //                      return split.getValueFormatet();
 //                  }
-            		return currencyFormat.format(split.getShares());
+            		return getSharesString(rowIndex);
             	} else {
             		return "";
             	}
             } else if ( columnIndex == TableCols.MINUS.ordinal() ) {
-                if ( ! split.getShares().isPositive() ) {
+                if ( cols.getShares(rowIndex) <= 0 ) {
 //                    if (account != null && !account.getCurrencyID().equals("EUR")) {
 //                        return split.getValueFormatet();
 //                    }
-                 return currencyFormat.format(split.getShares());
+                 return getSharesString(rowIndex);
                 } else {
                     return "";
                 }
@@ -203,20 +200,81 @@ public class KMyMoneySimpleTransactionSplitsTableModel implements KMyMoneyTransa
     }
 
     /**
-     * @param split the split whos account to use for the currency
+     * {@inheritDoc}
      */
-    private void updateCurrencyFormat(final KMyMoneyTransactionSplit split) {
-        currencyFormat = NumberFormat.getNumberInstance();
-        try {
-            if ( split.getAccount().getQualifSecCurrID().getType() == KMMQualifSecCurrID.Type.CURRENCY ) {
-                Currency currency = Currency.getInstance(split.getAccount().getQualifSecCurrID().getCode());
-                currencyFormat = NumberFormat.getCurrencyInstance();
-                currencyFormat.setCurrency(currency);
-            }
-        } catch (Exception e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+    @Override
+    public int getRowOfTransaction(final KMyMoneyTransaction trx) {
+        return getColumns().getFirstRow(trx.getID().toString());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getTransactionOrdinal(final int rowIndex) {
+        KMyMoneyAccount acct = getColumns().getSplit(rowIndex).getAccount();
+        if ( acct == null ) {
+            return -1;
+        }
+        // Never build the index here (we may be on the EDT)
+        BookIndex index = BookIndex.peek(acct.getKMyMoneyFile());
+        if ( index == null ) {
+            return -1;
+        }
+        return getColumns().getBookOrdinal(rowIndex, index.getCompactBook());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RegisterRowSorter.RowComparator getRowComparator(final int columnIndex) {
+        final RegisterColumns cols = getColumns();
+        if ( columnIndex == TableCols.DATE.ordinal() ) {
+            return new RegisterRowSorter.RowComparator() {
+                public int compare(final int row1, final int row2) {
+                    return Integer.compare(cols.getDate(row1), cols.getDate(row2));
+                }
+            };
+        } else if ( columnIndex == TableCols.TRANSACTION.ordinal() ) {
+            return new RegisterRowSorter.RowComparator() {
+                public int compare(final int row1, final int row2) {
+                    return String.CASE_INSENSITIVE_ORDER.compare(cols.getTransactionMemo(row1), cols.getTransactionMemo(row2));
+                }
+            };
+        } else if ( columnIndex == TableCols.DESCRIPTION.ordinal() ) {
+            return new RegisterRowSorter.RowComparator() {
+                public int compare(final int row1, final int row2) {
+                    return String.CASE_INSENSITIVE_ORDER.compare(cols.getMemo(row1), cols.getMemo(row2));
+                }
+            };
+        } else if ( columnIndex == TableCols.PLUS.ordinal() ||
+                    columnIndex == TableCols.MINUS.ordinal() ) {
+            return new RegisterRowSorter.RowComparator() {
+                public int compare(final int row1, final int row2) {
+                    return Long.compare(cols.getShares(row1), cols.getShares(row2));
+                }
+            };
+        }
+
+        return null;
+    }
+
+    /**
+     * @param rowIndex the row of the split
+     * @return the split's shares, formatted in the currency/security of its account
+     */
+    private String getSharesString(final int rowIndex) {
+        if ( mySharesStrings == null ) {
+            mySharesStrings = new String[getRowCount()];
+        }
+        String str = mySharesStrings[rowIndex];
+        if ( str == null ) {
+            RegisterColumns cols = getColumns();
+            str = AmountFormats.format(cols.getSecCurr(rowIndex), cols.getShares(rowIndex));
+            mySharesStrings[rowIndex] = str;
         }
+        return str;
     }
 
     /**
@@ -2,8 +2,12 @@ package org.kmymoney.viewer.models;
 
 
 
+import java.util.Collection;
+
 import javax.swing.table.TableModel;
 
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyTransaction;
 import org.kmymoney.api.read.KMyMoneyTransactionSplit;
 
 
@@ -27,5 +31,60 @@ public interface KMyMoneyTransactionSplitsTableModel extends TableModel {
      */
     KMyMoneyTransactionSplit getTransactionSplit(final int rowIndex);
 
+    /**
+     * How to sort the rows by the given column, cf. {@link RegisterRowSorter}.
+     * @param columnIndex the column to sort by
+     * @return a comparator of the typed values of the column (dates, 
+     *         signed amounts, ...) or null to compare the displayed values
+     */
+    default RegisterRowSorter.RowComparator getRowComparator(final int columnIndex) {
+        return null;
+    }
+
+    /**
+     * @return the accounts of all splits of the transactions of all rows
+     *         or null if the model has no index for that (then the caller
+     *         has to look at the rows one by one)
+     */
+    default Collection<KMyMoneyAccount> getAccountsOfAllRows() {
+        return null;
+    }
+
+    /**
+     * @param acct the account to sum up the splits of (of the transactions of all rows)
+     *             or null to sum up the splits of the rows themselves
+     * @return the sums of the positive and of the negative values (in units, cf. 
+     *         {@link org.kmymoney.viewer.data.Amounts}) of all rows or null 
+     *         if the model has no index for that (then the caller has to look 
+     *         at the rows one by one)
+     */
+    default long[] getValueSums(final KMyMoneyAccount acct) {
+        return null;
+    }
+
+    /**
+     * @param trx a transaction
+     * @return the first row (model-index) showing a split of the transaction
+     *         or -1 if there is none
+     */
+    default int getRowOfTransaction(final KMyMoneyTransaction trx) {
+        String trxID = trx.getID().toString();
+        for ( int row = 0; row < getRowCount(); row++ ) {
+            if ( getTransactionSplit(row).getTransaction().getID().toString().equals(trxID) ) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param rowIndex the row
+     * @return the ordinal of the row's transaction in the compact book of its file
+     *         (cf. {@link org.kmymoney.viewer.data.BookIndex}) or -1 if unknown
+     */
+    default int getTransactionOrdinal(final int rowIndex) {
+        return -1;
+    }
+
 
 }
@@ -0,0 +1,279 @@
+package org.kmymoney.viewer.models;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.kmymoney.base.basetypes.complex.KMMQualifSecCurrID;
+import org.kmymoney.viewer.data.Amounts;
+import org.kmymoney.viewer.data.CompactBook;
+
+/**
+ * A list of splits (one per row of a register), materialized once into
+ * columns, so that the table models do not have to ask the split-,
+ * transaction- and account-objects again on every repaint.
+ * <ul>
+ *   <li>Dates are epoch-days ({@link CompactBook#NO_DATE} if unknown) plus the
+ *       formatted date, which is shared by all rows of the same transaction.</li>
+ *   <li>Amounts are fixed-point longs, cf. {@link Amounts}.</li>
+ *   <li>Memos are already trimmed to "" if empty and kept only once.</li>
+ *   <li>The transactions of the rows are numbered (in the order they first
+ *       appear), cf. {@link #getTransactionIndex(int)}, and can be looked up
+ *       by their ID, cf. {@link #getFirstRow(String)}.</li>
+ * </ul>
+ */
+public final class RegisterColumns {
+
+	/**
+	 * No rows at all.
+	 */
+	public static final RegisterColumns EMPTY = new RegisterColumns(0, 0);
+
+	// Per row
+	private final KMyMoneyTransactionSplit[] splits;
+	private final int[]    trxIndex;
+	private final int[]    date;
+	private final String[] dateText;
+	private final String[] trxMemo;
+	private final String[] memo;
+	private final long[]   shares;
+	private final long[]   value;
+	private final KMMQualifSecCurrID[] secCurr;
+
+	// Per transaction
+	private final KMyMoneyTransaction[] transactions;
+	private final int[] firstRow;
+
+	// Transaction-ID -> number of the transaction (built on first use)
+	private Map<String, Integer> trxIndexByID = null;
+
+	// Ordinal in the compact book per transaction (bound on first use)
+	private volatile int[] bookOrdinals = null;
+
+	// ---------------------------------------------------------------
+
+	private RegisterColumns(final int nofRows, final int nofTrx) {
+		splits = new KMyMoneyTransactionSplit[nofRows];
+		trxIndex = new int[nofRows];
+		date = new int[nofRows];
+		dateText = new String[nofRows];
+		trxMemo = new String[nofRows];
+		memo = new String[nofRows];
+		shares = new long[nofRows];
+		value = new long[nofRows];
+		secCurr = new KMMQualifSecCurrID[nofRows];
+		transactions = new KMyMoneyTransaction[nofTrx];
+		firstRow = new int[nofTrx];
+	}
+
+	/**
+	 * @param rows the splits to show, one per row (may be null)
+	 * @return the columns of the rows
+	 */
+	public static RegisterColumns of(final List<? extends KMyMoneyTransactionSplit> rows) {
+		if ( rows == null || rows.isEmpty() ) {
+			return EMPTY;
+		}
+
+		// Number the transactions first
+		Map<KMyMoneyTransaction, Integer> trxIndexes = new IdentityHashMap<KMyMoneyTransaction, Integer>();
+		for ( KMyMoneyTransactionSplit splt : rows ) {
+			KMyMoneyTransaction trx = splt.getTransaction();
+			if ( ! trxIndexes.containsKey(trx) ) {
+				trxIndexes.put(trx, trxIndexes.size());
+			}
+		}
+
+		RegisterColumns cols = new RegisterColumns(rows.size(), trxIndexes.size());
+		Map<String, String> strings = new HashMap<String, String>();
+		int[] trxDate = new int[trxIndexes.size()];
+		String[] trxDateText = new String[trxIndexes.size()];
+		String[] trxMemoText = new String[trxIndexes.size()];
+		for ( Map.Entry<KMyMoneyTransaction, Integer> entry : trxIndexes.entrySet() ) {
+			KMyMoneyTransaction trx = entry.getKey();
+			int t = entry.getValue();
+			cols.transactions[t] = trx;
+			LocalDate datePosted = trx.getDatePosted();
+			trxDate[t] = datePosted == null ? CompactBook.NO_DATE : (int) datePosted.toEpochDay();
+			trxDateText[t] = pool(strings, trx.getDatePostedFormatted());
+			trxMemoText[t] = pool(strings, normalize(trx.getMemo()));
+		}
+
+		// Per-account data is the same for all rows of an account
+		Map<KMyMoneyAccount, KMMQualifSecCurrID> secCurrs = new IdentityHashMap<KMyMoneyAccount, KMMQualifSecCurrID>();
+
+		// As the transactions are numbered in the order they first appear, 
+		// each one's first row comes before those of all later ones
+		int row = 0;
+		int nextTrx = 0;
+		for ( KMyMoneyTransactionSplit splt : rows ) {
+			int t = trxIndexes.get(splt.getTransaction());
+			if ( t == nextTrx ) {
+				cols.firstRow[t] = row;
+				nextTrx++;
+			}
+			cols.splits[row] = splt;
+			cols.trxIndex[row] = t;
+			cols.date[row] = trxDate[t];
+			cols.dateText[row] = trxDateText[t];
+			cols.trxMemo[row] = trxMemoText[t];
+			cols.memo[row] = pool(strings, normalize(splt.getMemo()));
+			cols.shares[row] = Amounts.toUnits(splt.getShares());
+			cols.value[row] = Amounts.toUnits(splt.getValue());
+
+			KMyMoneyAccount acct = splt.getAccount();
+			if ( acct != null ) {
+				KMMQualifSecCurrID acctSecCurr = secCurrs.get(acct);
+				if ( acctSecCurr == null ) {
+					acctSecCurr = acct.getQualifSecCurrID();
+					secCurrs.put(acct, acctSecCurr);
+				}
+				cols.secCurr[row] = acctSecCurr;
+			}
+			row++;
+		}
+
+		return cols;
+	}
+
+	private static String normalize(final String str) {
+		if ( str == null ||
+			 str.trim().length() == 0 ) {
+			return "";
+		}
+		return str;
+	}
+
+	private static String pool(final Map<String, String> strings, final String str) {
+		if ( str == null ) {
+			return null;
+		}
+		String pooled = strings.putIfAbsent(str, str);
+		return pooled == null ? str : pooled;
+	}
+
+	// ---------------------------------------------------------------
+
+	public int getRowCount() {
+		return splits.length;
+	}
+
+	public KMyMoneyTransactionSplit getSplit(final int row) {
+		return splits[row];
+	}
+
+	/**
+	 * @return the number of different transactions of the rows
+	 */
+	public int getTransactionCount() {
+		return transactions.length;
+	}
+
+	/**
+	 * @return the number of the row's transaction (0..{@link #getTransactionCount()}-1)
+	 */
+	public int getTransactionIndex(final int row) {
+		return trxIndex[row];
+	}
+
+	/**
+	 * @param trxIndex a number returned by {@link #getTransactionIndex(int)}
+	 * @return the transaction with that number
+	 */
+	public KMyMoneyTransaction getTransactionAt(final int trxIndex) {
+		return transactions[trxIndex];
+	}
+
+	public KMyMoneyTransaction getTransaction(final int row) {
+		return transactions[trxIndex[row]];
+	}
+
+	/**
+	 * @param trxID the ID of a transaction
+	 * @return the first row of the transaction or -1 if none of the rows belongs to it
+	 */
+	public int getFirstRow(final String trxID) {
+		if ( trxIndexByID == null ) {
+			Map<String, Integer> byID = new HashMap<String, Integer>(transactions.length * 2);
+			for ( int t = 0; t < transactions.length; t++ ) {
+				byID.put(transactions[t].getID().toString(), t);
+			}
+			trxIndexByID = byID;
+		}
+
+		Integer t = trxIndexByID.get(trxID);
+		return t == null ? -1 : firstRow[t];
+	}
+
+	/**
+	 * @param row  a row
+	 * @param book the compact copy of the file the rows are from
+	 * @return the ordinal (in the compact book) of the row's transaction or -1
+	 */
+	public int getBookOrdinal(final int row, final CompactBook book) {
+		int[] ords = bookOrdinals;
+		if ( ords == null ) {
+			ords = new int[transactions.length];
+			for ( int t = 0; t < transactions.length; t++ ) {
+				ords[t] = book.getTransactionOrdinal(transactions[t].getID().toString());
+			}
+			bookOrdinals = ords;
+		}
+		return ords[trxIndex[row]];
+	}
+
+	/**
+	 * @return the epoch-day the row's transaction was posted or {@link CompactBook#NO_DATE}
+	 */
+	public int getDate(final int row) {
+		return date[row];
+	}
+
+	/**
+	 * @return the formatted date the row's transaction was posted
+	 */
+	public String getDateText(final int row) {
+		return dateText[row];
+	}
+
+	/**
+	 * @return the memo of the row's transaction (never null)
+	 */
+	public String getTransactionMemo(final int row) {
+		return trxMemo[row];
+	}
+
+	/**
+	 * @return the memo of the row's split (never null)
+	 */
+	public String getMemo(final int row) {
+		return memo[row];
+	}
+
+	/**
+	 * @return the shares of the row's split (in the account's currency/security) in units
+	 */
+	public long getShares(final int row) {
+		return shares[row];
+	}
+
+	/**
+	 * @return the value of the row's split (in the transaction's currency) in units
+	 */
+	public long getValue(final int row) {
+		return value[row];
+	}
+
+	/**
+	 * @return the currency/security of the row's account (may be null)
+	 */
+	public KMMQualifSecCurrID getSecCurr(final int row) {
+		return secCurr[row];
+	}
+
+}
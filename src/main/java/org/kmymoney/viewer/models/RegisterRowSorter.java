@@ -0,0 +1,289 @@
+package org.kmymoney.viewer.models;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+
+/**
+ * A RowSorter for the transaction tables that sorts by the typed
+ * values of the rows (dates, signed amounts, balances, memos),
+ * as given by {@link KMyMoneyTransactionSplitsTableModel#getRowComparator(int)},
+ * instead of by the formatted strings the table shows.
+ * <br>
+ * The permutations of each column are computed once (stable, on a primitive
+ * int-array) and cached per sort order, so toggling the sort order only switches
+ * between them. As with a TableRowSorter, rows with equal values keep the order
+ * of the model in both directions.
+ */
+public class RegisterRowSorter extends RowSorter<KMyMoneyTransactionSplitsTableModel> {
+
+	/**
+	 * Compares two rows (by their model-indexes).
+	 */
+	public interface RowComparator {
+		int compare(int row1, int row2);
+	}
+
+	// ---------------------------------------------------------------
+
+	private final KMyMoneyTransactionSplitsTableModel model;
+
+	private List<? extends SortKey> sortKeys = Collections.emptyList();
+
+	// Ascending and descending permutation (view -> model) per column
+	private final Map<Integer, int[][]> permutations = new HashMap<Integer, int[][]>();
+
+	// Current mapping (null if unsorted)
+	private int[] viewToModel = null;
+	private int[] modelToView = null;
+
+	// ---------------------------------------------------------------
+
+	public RegisterRowSorter(final KMyMoneyTransactionSplitsTableModel aModel) {
+		if ( aModel == null ) {
+			throw new IllegalArgumentException("argument <aModel> is null");
+		}
+
+		model = aModel;
+	}
+
+	@Override
+	public KMyMoneyTransactionSplitsTableModel getModel() {
+		return model;
+	}
+
+	@Override
+	public void toggleSortOrder(final int column) {
+		SortOrder order = SortOrder.ASCENDING;
+		if ( ! sortKeys.isEmpty() &&
+			 sortKeys.get(0).getColumn() == column &&
+			 sortKeys.get(0).getSortOrder() == SortOrder.ASCENDING ) {
+			order = SortOrder.DESCENDING;
+		}
+		setSortKeys(Collections.singletonList(new SortKey(column, order)));
+	}
+
+	@Override
+	public List<? extends SortKey> getSortKeys() {
+		return sortKeys;
+	}
+
+	@Override
+	public void setSortKeys(final List<? extends SortKey> keys) {
+		List<? extends SortKey> newKeys = keys == null ?
+				Collections.<SortKey>emptyList() :
+				Collections.unmodifiableList(keys);
+		if ( newKeys.equals(sortKeys) ) {
+			return;
+		}
+
+		sortKeys = newKeys;
+		fireSortOrderChanged();
+		sort();
+	}
+
+	@Override
+	public int convertRowIndexToModel(final int index) {
+		if ( viewToModel == null ) {
+			checkRowIndex(index);
+			return index;
+		}
+		return viewToModel[index];
+	}
+
+	@Override
+	public int convertRowIndexToView(final int index) {
+		if ( viewToModel == null ) {
+			checkRowIndex(index);
+			return index;
+		}
+		if ( index < 0 || index >= modelToView.length ) {
+			return -1;
+		}
+		return modelToView[index];
+	}
+
+	private void checkRowIndex(final int index) {
+		if ( index < 0 || index >= model.getRowCount() ) {
+			throw new IndexOutOfBoundsException("invalid row-index " + index);
+		}
+	}
+
+	@Override
+	public int getViewRowCount() {
+		return model.getRowCount();
+	}
+
+	@Override
+	public int getModelRowCount() {
+		return model.getRowCount();
+	}
+
+	// ---------------------------------------------------------------
+
+	@Override
+	public void modelStructureChanged() {
+		permutations.clear();
+		sortKeys = Collections.emptyList();
+		fireSortOrderChanged();
+		sort();
+	}
+
+	@Override
+	public void allRowsChanged() {
+		rowsChanged();
+	}
+
+	@Override
+	public void rowsInserted(final int firstRow, final int endRow) {
+		rowsChanged();
+	}
+
+	@Override
+	public void rowsDeleted(final int firstRow, final int endRow) {
+		rowsChanged();
+	}
+
+	@Override
+	public void rowsUpdated(final int firstRow, final int endRow) {
+		rowsChanged();
+	}
+
+	@Override
+	public void rowsUpdated(final int firstRow, final int endRow, final int column) {
+		rowsChanged();
+	}
+
+	private void rowsChanged() {
+		permutations.clear();
+		sort();
+	}
+
+	// ---------------------------------------------------------------
+
+	private void sort() {
+		int[] oldViewToModel = getViewToModelCopy();
+
+		if ( sortKeys.isEmpty() ||
+			 sortKeys.get(0).getSortOrder() == SortOrder.UNSORTED ) {
+			viewToModel = null;
+			modelToView = null;
+		} else {
+			int[][] perms = getPermutations(sortKeys.get(0).getColumn());
+			viewToModel = sortKeys.get(0).getSortOrder() == SortOrder.ASCENDING ? perms[0] : perms[1];
+			modelToView = new int[viewToModel.length];
+			for ( int view = 0; view < viewToModel.length; view++ ) {
+				modelToView[viewToModel[view]] = view;
+			}
+		}
+
+		fireRowSorterChanged(oldViewToModel);
+	}
+
+	private int[] getViewToModelCopy() {
+		if ( viewToModel == null ) {
+			return null;
+		}
+		return viewToModel.clone();
+	}
+
+	/**
+	 * @return the ascending and the descending permutation of the given column
+	 *         (computed on first use)
+	 */
+	private int[][] getPermutations(final int column) {
+		int[][] perms = permutations.get(column);
+		if ( perms == null ) {
+			RowComparator cmp = model.getRowComparator(column);
+			if ( cmp == null ) {
+				cmp = new DisplayedValueComparator(column);
+			}
+			int[] ascending = new int[model.getRowCount()];
+			for ( int row = 0; row < ascending.length; row++ ) {
+				ascending[row] = row;
+			}
+			sort(ascending, cmp);
+			perms = new int[][] { ascending, reverse(ascending, cmp) };
+			permutations.put(column, perms);
+		}
+		return perms;
+	}
+
+	/**
+	 * @param ascending a stable ascending permutation
+	 * @return the descending permutation, with rows of equal values
+	 *         still in the order of the model (i.e. of the ascending one)
+	 */
+	static int[] reverse(final int[] ascending, final RowComparator cmp) {
+		int[] descending = new int[ascending.length];
+		int k = 0;
+		int end = ascending.length;
+		while ( end > 0 ) {
+			// ascending[start .. end - 1] have equal values
+			int start = end - 1;
+			while ( start > 0 && cmp.compare(ascending[start - 1], ascending[start]) == 0 ) {
+				start--;
+			}
+			System.arraycopy(ascending, start, descending, k, end - start);
+			k += end - start;
+			end = start;
+		}
+		return descending;
+	}
+
+	/**
+	 * Stable merge-sort of an int-array.
+	 */
+	static void sort(final int[] rows, final RowComparator cmp) {
+		if ( rows.length < 2 ) {
+			return;
+		}
+		int[] tmp = new int[rows.length];
+		for ( int width = 1; width < rows.length; width *= 2 ) {
+			for ( int lo = 0; lo < rows.length - width; lo += 2 * width ) {
+				int mid = lo + width;
+				int hi = Math.min(lo + 2 * width, rows.length);
+				if ( cmp.compare(rows[mid - 1], rows[mid]) <= 0 ) {
+					continue; // already in order
+				}
+				System.arraycopy(rows, lo, tmp, lo, hi - lo);
+				int i = lo;
+				int j = mid;
+				int k = lo;
+				while ( i < mid && j < hi ) {
+					rows[k++] = cmp.compare(tmp[j], tmp[i]) < 0 ? tmp[j++] : tmp[i++];
+				}
+				while ( i < mid ) {
+					rows[k++] = tmp[i++];
+				}
+				while ( j < hi ) {
+					rows[k++] = tmp[j++];
+				}
+			}
+		}
+	}
+
+	/**
+	 * For columns the model has no typed values for.
+	 */
+	private final class DisplayedValueComparator implements RowComparator {
+		private final String[] values;
+
+		private DisplayedValueComparator(final int column) {
+			values = new String[model.getRowCount()];
+			for ( int row = 0; row < values.length; row++ ) {
+				Object value = model.getValueAt(row, column);
+				values[row] = value == null ? "" : value.toString();
+			}
+		}
+
+		public int compare(final int row1, final int row2) {
+			return values[row1].compareToIgnoreCase(values[row2]);
+		}
+	}
+
+}
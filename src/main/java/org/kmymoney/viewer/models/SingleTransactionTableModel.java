@@ -15,6 +15,7 @@ import org.kmymoney.api.Const;
 import org.kmymoney.api.read.KMyMoneyTransaction;
 import org.kmymoney.api.read.KMyMoneyTransactionSplit;
 import org.kmymoney.api.read.KMyMoneyTransactionSplit.Action;
+import org.kmymoney.base.basetypes.complex.KMMQualifSecCurrID;
 
 /**
  * TableModel to show and edit the splits and details of a single transaction.
@@ -33,6 +34,13 @@ public class SingleTransactionTableModel implements KMyMoneyTransactionSplitsTab
 	// The transaction that we are showing
 	private KMyMoneyTransaction myTransaction;
 
+	// Its splits, materialized into columns (rows 1.. of the table)
+	private RegisterColumns myColumns = null;
+
+	// Account-names and amounts per split (filled as rows are shown)
+	private String[] myAccountStrings = null;
+	private String[] myAmountStrings = null;
+
 	// The columns we display
 	private final String[] defaultColumnNames = new String[] {
 			Messages_SingleTransactionTableModel.getString("SingleTransactionTableModel.1"), 
@@ -52,6 +60,9 @@ public class SingleTransactionTableModel implements KMyMoneyTransactionSplitsTab
 	public SingleTransactionTableModel(final KMyMoneyTransaction trx) {
 		super();
 		myTransaction = trx;
+		myColumns = null;
+		myAccountStrings = null;
+		myAmountStrings = null;
 	}
 
 	public boolean isMultiCurrency() {
@@ -89,10 +100,23 @@ public class SingleTransactionTableModel implements KMyMoneyTransactionSplitsTab
 		}
 		
 		myTransaction = trx;
+		myColumns = null;
+		myAccountStrings = null;
+		myAmountStrings = null;
 	}
 
 	public KMyMoneyTransactionSplit getTransactionSplit(final int aRowIndex) {
-		return getTransactionSplits().get(aRowIndex);
+		return getColumns().getSplit(aRowIndex);
+	}
+
+	/**
+	 * @return the splits of the transaction, materialized into columns
+	 */
+	public RegisterColumns getColumns() {
+		if ( myColumns == null ) {
+			myColumns = RegisterColumns.of(getTransactionSplits());
+		}
+		return myColumns;
 	}
 
 	public List<KMyMoneyTransactionSplit> getTransactionSplits() {
@@ -113,7 +137,7 @@ public class SingleTransactionTableModel implements KMyMoneyTransactionSplitsTab
 		if ( transaction == null ) {
 			return 0;
 		}
-		return 1 + getTransactionSplits().size();
+		return 1 + getColumns().getRowCount();
 	}
 
 	@SuppressWarnings("unchecked")
@@ -149,42 +173,30 @@ public class SingleTransactionTableModel implements KMyMoneyTransactionSplitsTab
 					throw new IllegalArgumentException("illegal column index " + columnIndex);
 			}
 
-			KMyMoneyTransactionSplit splt = getTransactionSplit(rowIndex - 1);
+			int splitIndex = rowIndex - 1;
+			RegisterColumns cols = getColumns();
 
 			if ( columnIndex == TableCols.DATE.ordinal() ) {
-				return splt.getTransaction().getDatePostedFormatted();
+				return cols.getDateText(splitIndex);
 			} else if ( columnIndex == TableCols.ACTION.ordinal() ) {
-				Action action = splt.getAction();
+				Action action = cols.getSplit(splitIndex).getAction();
 				if ( action == null ) {
 					return "";
 				}
 				return action;
 			} else if ( columnIndex == TableCols.DESCRIPTION.ordinal() ) {
-				String desc = splt.getMemo();
-				if ( desc == null || 
-					 desc.trim().length() == 0 ) {
-					return "";
-				}
-				return desc;
+				return cols.getMemo(splitIndex);
 			} else if ( columnIndex == TableCols.ACCOUNT.ordinal() ) {
-				return splt.getAccount().getQualifiedName();
+				return getAccountString(splitIndex);
 			} else if ( columnIndex == TableCols.PLUS.ordinal() ) {
-				if ( splt.getValue().isPositive() ) {
-					if ( splt.getAccount().getQualifSecCurrID().getType() == getTransaction().getQualifSecCurrID().getType() && 
-						 splt.getAccount().getQualifSecCurrID().equals(getTransaction().getQualifSecCurrID()) ) {
-						return splt.getValueFormatted();
-					}
-					return splt.getValueFormatted() + " (" + splt.getSharesFormatted() + ")";
+				if ( cols.getValue(splitIndex) > 0 ) {
+					return getAmountString(splitIndex);
 				} else {
 					return "";
 				}
 			} else if ( columnIndex == TableCols.MINUS.ordinal() ) {
-				if ( ! splt.getValue().isPositive() ) {
-					if ( splt.getAccount().getQualifSecCurrID().getType() == getTransaction().getQualifSecCurrID().getType() && 
-						 splt.getAccount().getQualifSecCurrID().equals(getTransaction().getQualifSecCurrID()) ) {
-						return splt.getValueFormatted();
-					}
-					return splt.getValueFormatted() + " (" + splt.getSharesFormatted() + ")";
+				if ( cols.getValue(splitIndex) <= 0 ) {
+					return getAmountString(splitIndex);
 				} else {
 					return "";
 				}
@@ -212,6 +224,47 @@ public class SingleTransactionTableModel implements KMyMoneyTransactionSplitsTab
 		}
 	}
 
+	/**
+	 * @param splitIndex the index of the split
+	 * @return the qualified name of the split's account
+	 */
+	private String getAccountString(final int splitIndex) {
+		if ( myAccountStrings == null ) {
+			myAccountStrings = new String[getColumns().getRowCount()];
+		}
+		String str = myAccountStrings[splitIndex];
+		if ( str == null ) {
+			str = getColumns().getSplit(splitIndex).getAccount().getQualifiedName();
+			myAccountStrings[splitIndex] = str;
+		}
+		return str;
+	}
+
+	/**
+	 * @param splitIndex the index of the split
+	 * @return the split's value (and its shares, if the account's currency/security
+	 *         is not the one of the transaction)
+	 */
+	private String getAmountString(final int splitIndex) {
+		if ( myAmountStrings == null ) {
+			myAmountStrings = new String[getColumns().getRowCount()];
+		}
+		String str = myAmountStrings[splitIndex];
+		if ( str == null ) {
+			KMyMoneyTransactionSplit splt = getColumns().getSplit(splitIndex);
+			KMMQualifSecCurrID acctSecCurr = getColumns().getSecCurr(splitIndex);
+			if ( acctSecCurr != null &&
+				 acctSecCurr.getType() == getTransaction().getQualifSecCurrID().getType() && 
+				 acctSecCurr.equals(getTransaction().getQualifSecCurrID()) ) {
+				str = splt.getValueFormatted();
+			} else {
+				str = splt.getValueFormatted() + " (" + splt.getSharesFormatted() + ")";
+			}
+			myAmountStrings[splitIndex] = str;
+		}
+		return str;
+	}
+
 	/**
 	 * @return the description of the transaction as we display it. Never null.
 	 */
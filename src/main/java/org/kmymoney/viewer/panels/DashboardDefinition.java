@@ -0,0 +1,235 @@
+package org.kmymoney.viewer.panels;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.configuration.XMLPropertiesConfiguration;
+import org.kmymoney.viewer.widgets.TransactionSum.SUMMATIONTYPE;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The sums {@link DashboardPanel} shows, read from a properties-file
+ * (or an XML-properties-file if its name ends with ".xml"),
+ * numbered from 1 on:
+ * <pre>
+ * sum.1.name   = Food 2023
+ * sum.1.source = Expense:Food
+ * sum.1.target = Asset:Checking; Asset:Cash
+ * sum.1.type   = onlyto
+ * sum.1.from   = 2023-01-01
+ * sum.1.to     = 2023-12-31
+ * </pre>
+ * Accounts are given by their qualified names, separated by ";".
+ * The type is parsed by {@link SUMMATIONTYPE#getByName(String)} (default: all),
+ * the dates (ISO, both optional) limit the transactions' dates.
+ * <br>
+ * The file is given by the system property {@value #PROPERTY}; if it is not set,
+ * <code>jkmymoney-viewer/dashboard.properties</code> or <code>jkmymoney-viewer/dashboard.xml</code>
+ * in the user's configuration directory is used if it exists.
+ */
+public final class DashboardDefinition {
+
+	/**
+	 * One sum.
+	 */
+	public static final class Sum {
+		private final String name;
+		private final List<String> sourceAccounts;
+		private final List<String> targetAccounts;
+		private final SUMMATIONTYPE type;
+		private final LocalDate minDate;
+		private final LocalDate maxDate;
+
+		public Sum(final String name, final List<String> sourceAccounts, final List<String> targetAccounts,
+				   final SUMMATIONTYPE type, final LocalDate minDate, final LocalDate maxDate) {
+			if ( name == null ) {
+				throw new IllegalArgumentException("argument <name> is null");
+			}
+
+			if ( sourceAccounts == null ) {
+				throw new IllegalArgumentException("argument <sourceAccounts> is null");
+			}
+
+			if ( targetAccounts == null ) {
+				throw new IllegalArgumentException("argument <targetAccounts> is null");
+			}
+
+			if ( type == null ) {
+				throw new IllegalArgumentException("argument <type> is null");
+			}
+
+			this.name = name;
+			this.sourceAccounts = Collections.unmodifiableList(new ArrayList<String>(sourceAccounts));
+			this.targetAccounts = Collections.unmodifiableList(new ArrayList<String>(targetAccounts));
+			this.type = type;
+			this.minDate = minDate;
+			this.maxDate = maxDate;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the qualified names of the accounts to sum up
+		 */
+		public List<String> getSourceAccounts() {
+			return sourceAccounts;
+		}
+
+		/**
+		 * @return the qualified names of the accounts the transactions have to touch (may be empty)
+		 */
+		public List<String> getTargetAccounts() {
+			return targetAccounts;
+		}
+
+		public SUMMATIONTYPE getType() {
+			return type;
+		}
+
+		/**
+		 * @return the first date or null
+		 */
+		public LocalDate getMinDate() {
+			return minDate;
+		}
+
+		/**
+		 * @return the last date or null
+		 */
+		public LocalDate getMaxDate() {
+			return maxDate;
+		}
+	}
+
+	// ---------------------------------------------------------------
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DashboardDefinition.class);
+
+	public static final String PROPERTY = "kmymoney.viewer.dashboard";
+
+	private static final String PREFIX = "sum.";
+
+	private static final char LIST_DELIMITER = ';';
+
+	// ---------------------------------------------------------------
+
+	private final List<Sum> sums;
+
+	// ---------------------------------------------------------------
+
+	public DashboardDefinition(final List<Sum> someSums) {
+		if ( someSums == null ) {
+			throw new IllegalArgumentException("argument <someSums> is null");
+		}
+
+		sums = Collections.unmodifiableList(new ArrayList<Sum>(someSums));
+	}
+
+	/**
+	 * @return the file the user has configured or null if there is none
+	 */
+	public static File getConfiguredFile() {
+		String path = System.getProperty(PROPERTY);
+		if ( path != null ) {
+			return new File(path);
+		}
+
+		for ( String name : Arrays.asList("dashboard.properties", "dashboard.xml") ) {
+			File userFile = HighlightRules.getUserConfigFile(name);
+			if ( userFile.isFile() ) {
+				return userFile;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param file a file of sums (cf. class-comment) or null
+	 * @return the sums or null if there is no file or it cannot be read
+	 */
+	public static DashboardDefinition read(final File file) {
+		if ( file == null ) {
+			return null;
+		}
+
+		try {
+			DashboardDefinition definition = load(file.toURI().toURL());
+			LOGGER.info("read: Read " + definition.getSums().size() + " sums from " + file);
+			return definition;
+		} catch (MalformedURLException | ConfigurationException | IllegalArgumentException e) {
+			LOGGER.warn("read: Cannot read the dashboard from " + file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * @param url a properties-file of sums (cf. class-comment)
+	 * @return the sums
+	 * @throws ConfigurationException if the file cannot be read
+	 */
+	public static DashboardDefinition load(final URL url) throws ConfigurationException {
+		if ( url == null ) {
+			throw new IllegalArgumentException("argument <url> is null");
+		}
+
+		PropertiesConfiguration config = url.getPath().toLowerCase().endsWith(".xml") ?
+				new XMLPropertiesConfiguration() :
+				new PropertiesConfiguration();
+		// account-names may contain commas
+		config.setListDelimiter(LIST_DELIMITER);
+		config.load(url);
+
+		List<Sum> sums = new ArrayList<Sum>();
+		for ( int i = 1; config.containsKey(PREFIX + i + ".source"); i++ ) {
+			String key = PREFIX + i + ".";
+			sums.add(new Sum(config.getString(key + "name", "Sum " + i),
+							 getAccounts(config, key + "source"),
+							 getAccounts(config, key + "target"),
+							 SUMMATIONTYPE.getByName(config.getString(key + "type", "all").trim()),
+							 getDate(config, key + "from"),
+							 getDate(config, key + "to")));
+		}
+		return new DashboardDefinition(sums);
+	}
+
+	private static List<String> getAccounts(final PropertiesConfiguration config, final String key) {
+		List<String> result = new ArrayList<String>();
+		for ( String name : config.getStringArray(key) ) {
+			if ( name.trim().length() > 0 ) {
+				result.add(name.trim());
+			}
+		}
+		return result;
+	}
+
+	private static LocalDate getDate(final PropertiesConfiguration config, final String key) throws ConfigurationException {
+		String value = config.getString(key, null);
+		if ( value == null || value.trim().length() == 0 ) {
+			return null;
+		}
+		try {
+			return LocalDate.parse(value.trim());
+		} catch (DateTimeParseException e) {
+			throw new ConfigurationException("invalid date '" + value + "' for " + key);
+		}
+	}
+
+	// ---------------------------------------------------------------
+
+	public List<Sum> getSums() {
+		return sums;
+	}
+
+}
@@ -0,0 +1,181 @@
+package org.kmymoney.viewer.panels;
+
+import java.awt.BorderLayout;
+import java.awt.GridLayout;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyFile;
+import org.kmymoney.viewer.data.AccountHierarchy;
+import org.kmymoney.viewer.data.BookIndex;
+import org.kmymoney.viewer.widgets.TransactionSum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This Panel shows the sums of a {@link DashboardDefinition}
+ * for the file that has been loaded.
+ * <br>
+ * The sums are calculated in the background (all of them in one batch,
+ * cf. {@link TransactionSum}) when the file is set and are kept until another
+ * file is set or the definition's file changes (checked whenever the panel is shown).
+ */
+public class DashboardPanel extends JPanel {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DashboardPanel.class);
+
+	// For serializing
+	private static final long serialVersionUID = 2610357713450193652L;
+
+	// The file the sums are calculated for
+	private KMyMoneyFile myBook;
+
+	// The file the definition has been read from and its state then
+	private final File myDefinitionFile;
+	private long myDefinitionModified;
+
+	// The sums shown
+	private DashboardDefinition myDefinition;
+
+	// A panel holding one line per sum
+	private final JPanel mySumsPanel = new JPanel(new GridLayout(0, 1));
+
+	/**
+	 * @param definitionFile the file the sums are read from (cf. {@link DashboardDefinition#getConfiguredFile()})
+	 */
+	public DashboardPanel(final File definitionFile) {
+		super(new BorderLayout());
+
+		if ( definitionFile == null ) {
+			throw new IllegalArgumentException("argument <definitionFile> is null");
+		}
+
+		myDefinitionFile = definitionFile;
+		myDefinitionModified = definitionFile.lastModified();
+		myDefinition = DashboardDefinition.read(definitionFile);
+
+		JPanel top = new JPanel(new BorderLayout());
+		top.add(mySumsPanel, BorderLayout.NORTH);
+		add(new JScrollPane(top), BorderLayout.CENTER);
+
+		addHierarchyListener(new HierarchyListener() {
+			public void hierarchyChanged(final HierarchyEvent e) {
+				if ( (e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && isShowing() ) {
+					checkDefinition();
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the file the sums are calculated for (may be null)
+	 */
+	public KMyMoneyFile getBook() {
+		return myBook;
+	}
+
+	/**
+	 * @param aBook the file to calculate the sums for
+	 */
+	public void setBook(final KMyMoneyFile aBook) {
+		if ( aBook == null ) {
+			throw new IllegalArgumentException("argument <aBook> is null");
+		}
+
+		if ( aBook == myBook ) {
+			return; // nothing has changed
+		}
+		myBook = aBook;
+		rebuild();
+	}
+
+	/**
+	 * Re-read the definition if its file has changed.
+	 */
+	public void checkDefinition() {
+		long modified = myDefinitionFile.lastModified();
+		if ( modified == myDefinitionModified ) {
+			return;
+		}
+
+		LOGGER.info("checkDefinition: " + myDefinitionFile + " has changed, re-reading it");
+		myDefinitionModified = modified;
+		myDefinition = DashboardDefinition.read(myDefinitionFile);
+		rebuild();
+	}
+
+	/**
+	 * Replace the sums shown by new ones.
+	 */
+	private void rebuild() {
+		mySumsPanel.removeAll();
+		if ( myBook != null && myDefinition != null ) {
+			Map<String, KMyMoneyAccount> accounts = getAccountsByQualifiedName(myBook);
+			for ( DashboardDefinition.Sum sum : myDefinition.getSums() ) {
+				mySumsPanel.add(createSum(sum, accounts));
+			}
+		}
+		mySumsPanel.revalidate();
+		mySumsPanel.repaint();
+	}
+
+	private JPanel createSum(final DashboardDefinition.Sum sum, final Map<String, KMyMoneyAccount> accounts) {
+		Set<KMyMoneyAccount> sourceAccounts = getAccounts(sum.getSourceAccounts(), accounts);
+		Set<KMyMoneyAccount> targetAccounts = getAccounts(sum.getTargetAccounts(), accounts);
+		if ( sourceAccounts == null || targetAccounts == null ) {
+			JPanel line = new JPanel(new BorderLayout());
+			line.add(new JLabel(sum.getName()), BorderLayout.WEST);
+			line.add(new JLabel("   unknown account"), BorderLayout.CENTER);
+			return line;
+		}
+
+		return new TransactionSum.Builder(myBook)
+				.sourceAccounts(sourceAccounts)
+				.targetAccounts(targetAccounts)
+				.summationType(sum.getType())
+				.dateRange(sum.getMinDate(), sum.getMaxDate())
+				.name(sum.getName())
+				.build();
+	}
+
+	/**
+	 * @return the accounts of the names or null if one of them does not exist
+	 */
+	private Set<KMyMoneyAccount> getAccounts(final List<String> names, final Map<String, KMyMoneyAccount> accounts) {
+		Set<KMyMoneyAccount> result = new HashSet<KMyMoneyAccount>();
+		for ( String name : names ) {
+			KMyMoneyAccount acct = accounts.get(name);
+			if ( acct == null ) {
+				LOGGER.warn("getAccounts: There is no account '" + name + "'");
+				return null;
+			}
+			result.add(acct);
+		}
+		return result;
+	}
+
+	private static Map<String, KMyMoneyAccount> getAccountsByQualifiedName(final KMyMoneyFile book) {
+		BookIndex index = BookIndex.peek(book);
+		AccountHierarchy hierarchy = index == null ?
+				AccountHierarchy.of(book) : index.getAccountHierarchy();
+
+		Map<String, KMyMoneyAccount> result = new HashMap<String, KMyMoneyAccount>();
+		for ( int node = AccountHierarchy.ROOT + 1; node < hierarchy.getNodeCount(); node++ ) {
+			KMyMoneyAccount acct = hierarchy.getAccount(node);
+			result.put(acct.getQualifiedName(), acct);
+		}
+		return result;
+	}
+
+}
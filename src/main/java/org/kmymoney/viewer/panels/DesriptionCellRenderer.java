@@ -15,16 +15,37 @@ import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableModel;
 
 import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.kmymoney.viewer.data.BookIndex;
+import org.kmymoney.viewer.data.TransactionFlags;
 import org.kmymoney.viewer.models.KMyMoneyTransactionSplitsTableModel;
 
 
 /**
- * Renderer that turns any value that contains the string "TODO" bold.
+ * Renderer that highlights values the transactions of which have memos
+ * containing certain keywords (by default: "TODO" bold, " OK" green,
+ * cf. {@link HighlightRules}) and marks unbalanced transactions red.
+ * <br>
+ * All cells are rendered with the same label; the flags of the rows'
+ * transactions are looked up in the {@link TransactionFlags} of the file
+ * instead of looking at all of their splits on every repaint.
  */
 public class DesriptionCellRenderer implements TableCellRenderer {
 
 	private static final Logger LOGGER = Logger.getLogger(DesriptionCellRenderer.class.getName());
 
+	// How to highlight memos
+	private final HighlightRules myRules = HighlightRules.getConfigured();
+
+	// The one component all cells are rendered with
+	private final JLabel myLabel = new JLabel();
+	private final Color myDefaultForeground = myLabel.getForeground();
+	private final Font myPlainFont = myLabel.getFont();
+	private final Font myBoldFont = myPlainFont.deriveFont(myPlainFont.getStyle() | Font.BOLD);
+
+	// The flags of the transactions of the file the rows of myFlagsModel are from
+	private TableModel myFlagsModel = null;
+	private TransactionFlags myFlags = null;
+
 	//------------------------ support for propertyChangeListeners ------------------
 
 	/**
@@ -116,36 +137,29 @@ public class DesriptionCellRenderer implements TableCellRenderer {
 	public Component getTableCellRendererComponent(JTable table, Object value,
 			boolean isSelected, boolean hasFocus, int row, int column) {
 
-		JLabel renderer = new JLabel(value == null ? "" : value.toString());
-		Font f = renderer.getFont();
-		// renderer.setFont(f.deriveFont(f.getStyle() ^ Font.BOLD));
-		renderer.setFont(f.deriveFont(f.getStyle()));
+		String text = value == null ? "" : value.toString();
+		myLabel.setText(text);
 
+		long keywords = 0;
+		boolean unbalanced = false;
 		try {
-			markTokens(renderer, renderer.getText());
-
-			// mark unbalanced transactions in red.
+			// keywords and unbalanced transactions (marked in red) are looked up
+			// per transaction; the text shown is one of the memos they cover.
 			TableModel model = table.getModel();
 			if ( model instanceof KMyMoneyTransactionSplitsTableModel ) {
 				KMyMoneyTransactionSplitsTableModel tmodel = (KMyMoneyTransactionSplitsTableModel) model;
-				KMyMoneyTransactionSplit split = tmodel.getTransactionSplit(row);
-				if ( split != null ) {
-					if ( split.getTransaction() != null ) {
-						try {
-							List<? extends KMyMoneyTransactionSplit> splits = split.getTransaction().getSplits();
-							for ( KMyMoneyTransactionSplit splt : splits ) {
-								if ( splt != null ) {
-									markTokens(renderer, splt.getMemo());
-								}
-							}
-						} catch (Exception e) {
-							LOGGER.log(Level.SEVERE, "[Exception] Problem in "
-									+ getClass().getName() + ":getTableCellRendererComponent()"
-									+ " while traversing splits",
-									e);
-						}
+				int modelRow = table.convertRowIndexToModel(row);
+				int trxOrd = tmodel.getTransactionOrdinal(modelRow);
+				TransactionFlags trxFlags = trxOrd < 0 ? null : getTransactionFlags(tmodel, modelRow);
+				if ( trxFlags != null ) {
+					keywords |= trxFlags.getKeywords(trxOrd);
+					unbalanced = trxFlags.isUnbalanced(trxOrd);
+				} else {
+					KMyMoneyTransactionSplit split = tmodel.getTransactionSplit(modelRow);
+					if ( split != null ) {
+						keywords |= getKeywords(split);
+						unbalanced = isUnbalanced(split);
 					}
-					markUnbalanced(renderer, split);
 				}
 			}
 		} catch (Exception e) {
@@ -154,50 +168,85 @@ public class DesriptionCellRenderer implements TableCellRenderer {
 			             e);
 		}
 
+		myLabel.setFont(myRules.isBold(keywords) ? myBoldFont : myPlainFont);
+		Color foreground = unbalanced ? Color.red : myRules.getForeground(keywords);
+		myLabel.setForeground(foreground == null ? myDefaultForeground : foreground);
+		Color background = myRules.getBackground(keywords);
+		myLabel.setOpaque(background != null);
+		myLabel.setBackground(background);
+
 		// ideas for future enhancements: allow plugins to display icons.
 		// e.g. display a hbci-icon if this is an hbci-imported transaction
 		// to display the original transaction-details on click.
-		return renderer;
+		return myLabel;
 	}
 
 	/**
-	 * Check for unbalanced transactions and mark them in red. 
-	 * @param renderer the renderer to modify it's style
-	 * @param split the transaction we display
+	 * @param tmodel   the table's model
+	 * @param modelRow a row of it
+	 * @return the flags of the transactions of the file the model's rows are from
+	 *         (looked up once per model) or null if they are not known (yet).
+	 *         They are never computed here, as we are on the EDT.
 	 */
-	private void markUnbalanced(final JLabel renderer, final KMyMoneyTransactionSplit split) {
-		try {
-			if ( split.getTransaction() == null || 
-				 ! split.getTransaction().isBalanced() ) {
-				renderer.setForeground(Color.red);
+	private TransactionFlags getTransactionFlags(final KMyMoneyTransactionSplitsTableModel tmodel, final int modelRow) {
+		if ( myFlagsModel != tmodel ) {
+			KMyMoneyTransactionSplit split = tmodel.getTransactionSplit(modelRow);
+			if ( split == null || split.getAccount() == null ) {
+				return null;
 			}
-		} catch (Exception e) {
-			LOGGER.log(Level.SEVERE, "[Exception] Problem in "
-			           + getClass().getName() + ":markUnbalanced()",
-			             e);
-			renderer.setForeground(Color.red);
+			BookIndex index = BookIndex.peek(split.getAccount().getKMyMoneyFile());
+			TransactionFlags flags = index == null ? null : index.peekTransactionFlags(myRules.getMatcher());
+			if ( flags == null ) {
+				// look again on the next paint
+				return null;
+			}
+			myFlags = flags;
+			myFlagsModel = tmodel;
 		}
+		return myFlags;
 	}
 
 	/**
-	 * Make them bold of they contain the Text "TODO".<br/>
-	 * If not and they contain " OK", mark them dark-green.
-	 * @param renderer the renderer to modify its style
+	 * For models that do not know the transactions' ordinals:
+	 * look at the transaction and all of its splits.
+	 * @param split the split we display
+	 * @return the keywords of {@link #myRules} in the memos of its transaction and the transaction's splits
 	 */
-	private void markTokens(final JLabel renderer, final String text) {
-		try {
-			if ( text.contains("TODO") ) {
-				Font f = renderer.getFont();
-				renderer.setFont(f.deriveFont(f.getStyle() | Font.BOLD));
-			} else if ( text.contains(" OK") ) {
-				renderer.setForeground(Color.GREEN.darker());
+	private long getKeywords(final KMyMoneyTransactionSplit split) {
+		long keywords = 0;
+		if ( split.getTransaction() != null ) {
+			try {
+				keywords |= myRules.getMatcher().matchFirst(split.getTransaction().getMemo());
+				List<? extends KMyMoneyTransactionSplit> splits = split.getTransaction().getSplits();
+				for ( KMyMoneyTransactionSplit splt : splits ) {
+					if ( splt != null ) {
+						keywords |= myRules.getMatcher().matchFirst(splt.getMemo());
+					}
+				}
+			} catch (Exception e) {
+				LOGGER.log(Level.SEVERE, "[Exception] Problem in "
+						+ getClass().getName() + ":getKeywords()"
+						+ " while traversing splits",
+						e);
 			}
+		}
+		return keywords;
+	}
+
+	/**
+	 * Check for unbalanced transactions (to mark them in red). 
+	 * @param split the transaction we display
+	 * @return whether the transaction is unbalanced
+	 */
+	private boolean isUnbalanced(final KMyMoneyTransactionSplit split) {
+		try {
+			return split.getTransaction() == null || 
+				   ! split.getTransaction().isBalanced();
 		} catch (Exception e) {
-			LOGGER.log(Level.SEVERE,"[Exception] Problem in "
-			           + getClass().getName() + ":markTokens()",
+			LOGGER.log(Level.SEVERE, "[Exception] Problem in "
+			           + getClass().getName() + ":isUnbalanced()",
 			             e);
+			return true;
 		}
 	}
 }
-
-
@@ -0,0 +1,273 @@
+package org.kmymoney.viewer.panels;
+
+import java.awt.Color;
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.kmymoney.viewer.data.KeywordMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The rules by which {@link DesriptionCellRenderer} highlights transactions
+ * the memos of which contain certain keywords.
+ * <br>
+ * The rules are read from a properties-file, numbered from 1 on:
+ * <pre>
+ * highlight.1.keyword    = TODO
+ * highlight.1.bold       = true
+ * highlight.2.keyword    = &#92;u0020OK
+ * highlight.2.foreground = #00B200
+ * highlight.3.keyword    = check
+ * highlight.3.background = #FFFF80
+ * </pre>
+ * Keywords are case-sensitive (leading blanks have to be written as <code>&#92;u0020</code>).
+ * If a memo contains the keywords of several rules, only the first of them
+ * applies; the rules of all memos of a transaction are combined.
+ * <br>
+ * The file is given by the system property {@value #PROPERTY}; if it is not set,
+ * <code>jkmymoney-viewer/highlight.properties</code> in the user's configuration
+ * directory is used if it exists, else the built-in rules (TODO in bold, " OK" in green).
+ */
+public final class HighlightRules {
+
+	/**
+	 * One rule.
+	 */
+	public static final class Rule {
+		private final String keyword;
+		private final boolean bold;
+		private final Color foreground;
+		private final Color background;
+
+		public Rule(final String keyword, final boolean bold, final Color foreground, final Color background) {
+			if ( keyword == null || keyword.length() == 0 ) {
+				throw new IllegalArgumentException("argument <keyword> is null or empty");
+			}
+
+			this.keyword = keyword;
+			this.bold = bold;
+			this.foreground = foreground;
+			this.background = background;
+		}
+
+		public String getKeyword() {
+			return keyword;
+		}
+
+		public boolean isBold() {
+			return bold;
+		}
+
+		/**
+		 * @return the text-colour or null to keep it
+		 */
+		public Color getForeground() {
+			return foreground;
+		}
+
+		/**
+		 * @return the background-colour or null to keep it
+		 */
+		public Color getBackground() {
+			return background;
+		}
+	}
+
+	// ---------------------------------------------------------------
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(HighlightRules.class);
+
+	public static final String PROPERTY = "kmymoney.viewer.highlight";
+
+	private static final String PREFIX = "highlight.";
+
+	private static final String DEFAULT_RULES = "highlightrules.properties";
+
+	private static volatile HighlightRules configured = null;
+
+	// ---------------------------------------------------------------
+
+	private final List<Rule> rules;
+
+	private final KeywordMatcher matcher;
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * @param someRules the rules (at most {@link KeywordMatcher#MAX_KEYWORDS})
+	 */
+	public HighlightRules(final List<Rule> someRules) {
+		if ( someRules == null ) {
+			throw new IllegalArgumentException("argument <someRules> is null");
+		}
+
+		rules = Collections.unmodifiableList(new ArrayList<Rule>(someRules));
+		List<String> keywords = new ArrayList<String>(rules.size());
+		for ( Rule rule : rules ) {
+			keywords.add(rule.getKeyword());
+		}
+		matcher = KeywordMatcher.of(keywords);
+	}
+
+	/**
+	 * @return the rules configured for this user (read once)
+	 */
+	public static HighlightRules getConfigured() {
+		if ( configured == null ) {
+			synchronized ( HighlightRules.class ) {
+				if ( configured == null ) {
+					configured = loadConfigured();
+				}
+			}
+		}
+		return configured;
+	}
+
+	private static HighlightRules loadConfigured() {
+		URL url = null;
+		try {
+			String path = System.getProperty(PROPERTY);
+			if ( path != null ) {
+				url = new File(path).toURI().toURL();
+			} else {
+				File userFile = getUserFile();
+				if ( userFile.isFile() ) {
+					url = userFile.toURI().toURL();
+				}
+			}
+			if ( url != null ) {
+				HighlightRules rules = load(url);
+				LOGGER.info("loadConfigured: Read " + rules.getRules().size() + " highlight-rules from " + url);
+				return rules;
+			}
+		} catch (MalformedURLException | ConfigurationException | IllegalArgumentException e) {
+			LOGGER.warn("loadConfigured: Cannot read the highlight-rules from " + url + ", using the built-in ones", e);
+		}
+
+		try {
+			return load(HighlightRules.class.getResource(DEFAULT_RULES));
+		} catch (ConfigurationException e) {
+			LOGGER.error("loadConfigured: Cannot read the built-in highlight-rules", e);
+			return new HighlightRules(new ArrayList<Rule>());
+		}
+	}
+
+	/**
+	 * @return the user's file of highlight-rules (which may not exist)
+	 */
+	public static File getUserFile() {
+		return getUserConfigFile("highlight.properties");
+	}
+
+	/**
+	 * @param name the name of a file
+	 * @return the file of that name in the user's configuration-directory of the viewer
+	 */
+	static File getUserConfigFile(final String name) {
+		String xdgConfig = System.getenv("XDG_CONFIG_HOME");
+		File base = ( xdgConfig != null && ! xdgConfig.isEmpty() ) ?
+				new File(xdgConfig) :
+				new File(System.getProperty("user.home"), ".config");
+		return new File(new File(base, "jkmymoney-viewer"), name);
+	}
+
+	/**
+	 * @param url a properties-file of rules (cf. class-comment)
+	 * @return the rules
+	 * @throws ConfigurationException if the file cannot be read
+	 */
+	public static HighlightRules load(final URL url) throws ConfigurationException {
+		if ( url == null ) {
+			throw new IllegalArgumentException("argument <url> is null");
+		}
+
+		PropertiesConfiguration config = new PropertiesConfiguration();
+		// keywords may contain commas
+		config.setDelimiterParsingDisabled(true);
+		config.load(url);
+
+		List<Rule> rules = new ArrayList<Rule>();
+		for ( int i = 1; config.containsKey(PREFIX + i + ".keyword"); i++ ) {
+			String key = PREFIX + i + ".";
+			rules.add(new Rule(config.getString(key + "keyword"),
+							   config.getBoolean(key + "bold", false),
+							   getColor(config, key + "foreground"),
+							   getColor(config, key + "background")));
+		}
+		return new HighlightRules(rules);
+	}
+
+	private static Color getColor(final PropertiesConfiguration config, final String key) throws ConfigurationException {
+		String value = config.getString(key, null);
+		if ( value == null || value.trim().length() == 0 ) {
+			return null;
+		}
+		try {
+			return Color.decode(value.trim());
+		} catch (NumberFormatException e) {
+			throw new ConfigurationException("invalid colour '" + value + "' for " + key);
+		}
+	}
+
+	// ---------------------------------------------------------------
+
+	public List<Rule> getRules() {
+		return rules;
+	}
+
+	/**
+	 * @return the keywords of the rules (keyword i is that of rule i)
+	 */
+	public KeywordMatcher getMatcher() {
+		return matcher;
+	}
+
+	/**
+	 * @param keywords keywords found by {@link #getMatcher()}
+	 * @return whether one of the rules of the keywords is bold
+	 */
+	public boolean isBold(final long keywords) {
+		for ( long rest = keywords; rest != 0; rest &= rest - 1 ) {
+			if ( rules.get(Long.numberOfTrailingZeros(rest)).isBold() ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param keywords keywords found by {@link #getMatcher()}
+	 * @return the text-colour of the first of their rules that has one or null
+	 */
+	public Color getForeground(final long keywords) {
+		for ( long rest = keywords; rest != 0; rest &= rest - 1 ) {
+			Color color = rules.get(Long.numberOfTrailingZeros(rest)).getForeground();
+			if ( color != null ) {
+				return color;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param keywords keywords found by {@link #getMatcher()}
+	 * @return the background-colour of the first of their rules that has one or null
+	 */
+	public Color getBackground(final long keywords) {
+		for ( long rest = keywords; rest != 0; rest &= rest - 1 ) {
+			Color color = rules.get(Long.numberOfTrailingZeros(rest)).getBackground();
+			if ( color != null ) {
+				return color;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,199 @@
+package org.kmymoney.viewer.panels;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.kmymoney.viewer.data.Amounts;
+import org.kmymoney.viewer.models.KMyMoneyTransactionSplitsTableModel;
+
+/**
+ * The summary of the selected rows of a transactions-table
+ * (sums of the positive and negative values, the accounts involved),
+ * maintained incrementally as single rows are selected and deselected.
+ * <br>
+ * The sums are kept for the selected rows' splits and, if an account is chosen
+ * (cf. {@link #setAccount(KMyMoneyAccount)}), for the splits of that account
+ * in the selected rows' transactions, each transaction counted once.
+ * <br>
+ * Not thread-safe.
+ */
+class SelectionSummary {
+
+	private final KMyMoneyTransactionSplitsTableModel model;
+
+	// Selected model-rows
+	private final BitSet selected = new BitSet();
+	private int selectedCount = 0;
+
+	// Number of selected rows per transaction / of selected transactions per account
+	private final Map<KMyMoneyTransaction, Integer> trxRefs = new IdentityHashMap<KMyMoneyTransaction, Integer>();
+	private final Map<KMyMoneyAccount, Integer> acctRefs = new HashMap<KMyMoneyAccount, Integer>();
+
+	// Sums (in units) of the selected rows' splits
+	private long rowPlus = 0;
+	private long rowMinus = 0;
+
+	// Sums (in units) of the chosen account's splits in the selected transactions
+	private KMyMoneyAccount account = null;
+	private long acctPlus = 0;
+	private long acctMinus = 0;
+
+	// ---------------------------------------------------------------
+
+	SelectionSummary(final KMyMoneyTransactionSplitsTableModel aModel) {
+		if ( aModel == null ) {
+			throw new IllegalArgumentException("argument <aModel> is null");
+		}
+
+		model = aModel;
+	}
+
+	KMyMoneyTransactionSplitsTableModel getModel() {
+		return model;
+	}
+
+	/**
+	 * Deselect all rows.
+	 */
+	void clear() {
+		selected.clear();
+		selectedCount = 0;
+		trxRefs.clear();
+		acctRefs.clear();
+		rowPlus = 0;
+		rowMinus = 0;
+		acctPlus = 0;
+		acctMinus = 0;
+	}
+
+	/**
+	 * @param row        a model-row
+	 * @param isSelected whether it is selected now
+	 */
+	void setSelected(final int row, final boolean isSelected) {
+		if ( selected.get(row) == isSelected ) {
+			return; // nothing has changed
+		}
+
+		int sign = isSelected ? 1 : -1;
+		selected.set(row, isSelected);
+		selectedCount += sign;
+
+		KMyMoneyTransactionSplit splt = model.getTransactionSplit(row);
+		long value = Amounts.toUnits(splt.getValue());
+		if ( value > 0 ) {
+			rowPlus += sign * value;
+		} else {
+			rowMinus += sign * value;
+		}
+
+		KMyMoneyTransaction trx = splt.getTransaction();
+		Integer refs = trxRefs.get(trx);
+		int newRefs = (refs == null ? 0 : refs) + sign;
+		if ( newRefs == 0 ) {
+			trxRefs.remove(trx);
+			transactionChanged(trx, -1);
+		} else {
+			trxRefs.put(trx, newRefs);
+			if ( refs == null ) {
+				transactionChanged(trx, 1);
+			}
+		}
+	}
+
+	/**
+	 * A transaction has become selected (sign = 1) or is no longer selected (sign = -1).
+	 */
+	private void transactionChanged(final KMyMoneyTransaction trx, final int sign) {
+		for ( KMyMoneyTransactionSplit splt : trx.getSplits() ) {
+			if ( splt == null ) {
+				continue;
+			}
+			KMyMoneyAccount acct = splt.getAccount();
+			if ( acct == null ) {
+				continue;
+			}
+
+			Integer refs = acctRefs.get(acct);
+			int newRefs = (refs == null ? 0 : refs) + sign;
+			if ( newRefs == 0 ) {
+				acctRefs.remove(acct);
+			} else {
+				acctRefs.put(acct, newRefs);
+			}
+
+			if ( acct.equals(account) ) {
+				long value = Amounts.toUnits(splt.getValue());
+				if ( value > 0 ) {
+					acctPlus += sign * value;
+				} else {
+					acctMinus += sign * value;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param acct the account to sum up the splits of (null for the selected rows' splits)
+	 */
+	void setAccount(final KMyMoneyAccount acct) {
+		if ( acct == null ? account == null : acct.equals(account) ) {
+			return; // nothing has changed
+		}
+
+		account = acct;
+		acctPlus = 0;
+		acctMinus = 0;
+		if ( acct == null ) {
+			return;
+		}
+		for ( KMyMoneyTransaction trx : trxRefs.keySet() ) {
+			for ( KMyMoneyTransactionSplit splt : trx.getSplits() ) {
+				if ( splt != null &&
+					 acct.equals(splt.getAccount()) ) {
+					long value = Amounts.toUnits(splt.getValue());
+					if ( value > 0 ) {
+						acctPlus += value;
+					} else {
+						acctMinus += value;
+					}
+				}
+			}
+		}
+	}
+
+	// ---------------------------------------------------------------
+
+	int getSelectedCount() {
+		return selectedCount;
+	}
+
+	/**
+	 * @return the sum (in units) of the positive values
+	 */
+	long getPlus() {
+		return account == null ? rowPlus : acctPlus;
+	}
+
+	/**
+	 * @return the sum (in units) of the negative values
+	 */
+	long getMinus() {
+		return account == null ? rowMinus : acctMinus;
+	}
+
+	/**
+	 * @return the accounts of all splits of the selected transactions
+	 */
+	SortedSet<KMyMoneyAccount> getAccounts() {
+		return new TreeSet<KMyMoneyAccount>(acctRefs.keySet());
+	}
+
+}
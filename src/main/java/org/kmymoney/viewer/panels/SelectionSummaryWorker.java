@@ -0,0 +1,349 @@
+package org.kmymoney.viewer.panels;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Collection;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.viewer.models.KMyMoneyTransactionSplitsTableModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Computes the summary of the selected rows of a transactions-table
+ * (cf. {@link SelectionSummary}) in a background thread.
+ * <br>
+ * Changes of the selection and of the chosen account are collected on the
+ * event dispatch thread and only handed to the background thread once they
+ * have stopped for {@link #DELAY} ms, so that a burst of changes results in a
+ * single computation. Every change starts a new generation; a computation
+ * that has been overtaken by a newer change is abandoned and its result
+ * is never shown.
+ * <br>
+ * All methods have to be called on the event dispatch thread.
+ */
+class SelectionSummaryWorker {
+
+	/**
+	 * Receives the results (on the event dispatch thread).
+	 */
+	interface Listener {
+		void summaryComputed(Result result);
+	}
+
+	/**
+	 * The summary of the selected rows or, if none are selected, of all rows.
+	 */
+	static final class Result {
+		private final KMyMoneyAccount account;
+		private final int selectedCount;
+		private final int rowCount;
+		private final long plus;
+		private final long minus;
+		private final SortedSet<KMyMoneyAccount> accounts;
+
+		private Result(final KMyMoneyAccount account, final int selectedCount, final int rowCount,
+					   final long plus, final long minus, final SortedSet<KMyMoneyAccount> accounts) {
+			this.account = account;
+			this.selectedCount = selectedCount;
+			this.rowCount = rowCount;
+			this.plus = plus;
+			this.minus = minus;
+			this.accounts = accounts;
+		}
+
+		/**
+		 * @return the account the sums are for (null for the rows' splits)
+		 */
+		KMyMoneyAccount getAccount() {
+			return account;
+		}
+
+		int getSelectedCount() {
+			return selectedCount;
+		}
+
+		int getRowCount() {
+			return rowCount;
+		}
+
+		/**
+		 * @return the sum (in units) of the positive values
+		 */
+		long getPlus() {
+			return plus;
+		}
+
+		/**
+		 * @return the sum (in units) of the negative values
+		 */
+		long getMinus() {
+			return minus;
+		}
+
+		/**
+		 * @return the accounts of all splits of the transactions summed up
+		 */
+		SortedSet<KMyMoneyAccount> getAccounts() {
+			return accounts;
+		}
+	}
+
+	// ---------------------------------------------------------------
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SelectionSummaryWorker.class);
+
+	/**
+	 * How long (in ms) the selection has to stay unchanged
+	 * before the summary is computed.
+	 */
+	// ::MAGIC
+	static final int DELAY = 150;
+
+	/**
+	 * How many rows to sum up between two checks
+	 * whether the computation has been overtaken.
+	 */
+	// ::MAGIC
+	private static final int CHECK_INTERVAL = 4096;
+
+	/**
+	 * The summaries of all tables are computed one after the other by a single background thread.
+	 */
+	private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(final Runnable r) {
+			Thread thread = new Thread(r, "SelectionSummaryWorker");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	// ---------------------------------------------------------------
+
+	private final JTable table;
+	private final KMyMoneyTransactionSplitsTableModel model;
+	private final Listener listener;
+
+	private final Timer timer;
+	private final AtomicInteger generation = new AtomicInteger();
+
+	// Collected on the event dispatch thread since the last computation:
+	// the rows (view-indexes) the selection of which has changed...
+	private int pendingFirstRow = Integer.MAX_VALUE;
+	private int pendingLastRow = -1;
+	// ...or whether the rows have been re-sorted, so that the selection has to be read anew
+	private boolean needsResync = true;
+	private KMyMoneyAccount account = null;
+
+	// Only used by the background thread
+	private final SelectionSummary selection;
+	private SelectionSummary allRows = null;
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * @param aTable    the table the selection of which to summarize
+	 * @param aModel    the model shown by the table
+	 * @param aListener receives the results
+	 */
+	SelectionSummaryWorker(final JTable aTable, final KMyMoneyTransactionSplitsTableModel aModel, final Listener aListener) {
+		if ( aTable == null ) {
+			throw new IllegalArgumentException("argument <aTable> is null");
+		}
+
+		if ( aModel == null ) {
+			throw new IllegalArgumentException("argument <aModel> is null");
+		}
+
+		if ( aListener == null ) {
+			throw new IllegalArgumentException("argument <aListener> is null");
+		}
+
+		table = aTable;
+		model = aModel;
+		listener = aListener;
+		selection = new SelectionSummary(aModel);
+
+		timer = new Timer(DELAY, new ActionListener() {
+			public void actionPerformed(final ActionEvent e) {
+				submit();
+			}
+		});
+		timer.setRepeats(false);
+	}
+
+	/**
+	 * The selection of the rows firstRow..lastRow (view-indexes) has changed.
+	 * Call {@link #request()} when the user has finished selecting.
+	 */
+	void addChangedRows(final int firstRow, final int lastRow) {
+		pendingFirstRow = Math.min(pendingFirstRow, firstRow);
+		pendingLastRow = Math.max(pendingLastRow, lastRow);
+		generation.incrementAndGet();
+	}
+
+	/**
+	 * The rows have been re-sorted.
+	 */
+	void rowsMoved() {
+		needsResync = true;
+		generation.incrementAndGet();
+	}
+
+	/**
+	 * @param acct the account to sum up the splits of (null for the rows' splits)
+	 */
+	void setAccount(final KMyMoneyAccount acct) {
+		account = acct;
+		request();
+	}
+
+	/**
+	 * Compute the summary as soon as there have been no further changes for {@link #DELAY} ms.
+	 */
+	void request() {
+		generation.incrementAndGet();
+		timer.restart();
+	}
+
+	/**
+	 * Do not deliver any more results.
+	 */
+	void dispose() {
+		timer.stop();
+		generation.incrementAndGet();
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * Hand the changes collected so far to the background thread.
+	 */
+	private void submit() {
+		final boolean resync = needsResync;
+		final int[] rows;
+		final boolean[] selected;
+		if ( resync ) {
+			rows = table.getSelectedRows();
+			selected = new boolean[rows.length];
+			for ( int i = 0; i < rows.length; i++ ) {
+				rows[i] = table.convertRowIndexToModel(rows[i]);
+				selected[i] = true;
+			}
+		} else {
+			ListSelectionModel selModel = table.getSelectionModel();
+			int first = Math.max(pendingFirstRow, 0);
+			int last = Math.min(pendingLastRow, table.getRowCount() - 1);
+			rows = new int[Math.max(last - first + 1, 0)];
+			selected = new boolean[rows.length];
+			for ( int i = 0; i < rows.length; i++ ) {
+				rows[i] = table.convertRowIndexToModel(first + i);
+				selected[i] = selModel.isSelectedIndex(first + i);
+			}
+		}
+		needsResync = false;
+		pendingFirstRow = Integer.MAX_VALUE;
+		pendingLastRow = -1;
+
+		final int gen = generation.get();
+		final KMyMoneyAccount acct = account;
+		EXECUTOR.execute(new Runnable() {
+			public void run() {
+				try {
+					final Result result = compute(gen, resync, rows, selected, acct);
+					if ( result == null ) {
+						return; // overtaken
+					}
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							if ( gen == generation.get() ) {
+								listener.summaryComputed(result);
+							}
+						}
+					});
+				} catch (Exception e) {
+					LOGGER.error("submit: cannot compute the summary of the selected rows", e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Runs in the background thread.
+	 *
+	 * @return the summary or null if the computation has been overtaken
+	 */
+	private Result compute(final int gen, final boolean resync,
+						   final int[] rows, final boolean[] selected,
+						   final KMyMoneyAccount acct) {
+		// The changes have to be applied in any case,
+		// as later computations build upon them
+		if ( resync ) {
+			selection.clear();
+		}
+		for ( int i = 0; i < rows.length; i++ ) {
+			selection.setSelected(rows[i], selected[i]);
+		}
+		if ( gen != generation.get() ) {
+			return null;
+		}
+
+		int selectedCount = selection.getSelectedCount();
+		if ( selectedCount > 0 ) {
+			selection.setAccount(acct);
+			return new Result(acct, selectedCount, model.getRowCount(),
+							  selection.getPlus(), selection.getMinus(), selection.getAccounts());
+		}
+
+		// No rows selected: summarize all of them
+		long[] indexedSums = model.getValueSums(acct);
+		Collection<KMyMoneyAccount> indexedAccounts = model.getAccountsOfAllRows();
+		if ( indexedSums != null && indexedAccounts != null ) {
+			// the model sums them up itself (from its indexes, without the API's objects)
+			return new Result(acct, 0, model.getRowCount(),
+							  indexedSums[0], indexedSums[1], new TreeSet<KMyMoneyAccount>(indexedAccounts));
+		}
+
+		SelectionSummary all = getAllRows(gen);
+		if ( all == null ) {
+			return null;
+		}
+		all.setAccount(acct);
+		return new Result(acct, 0, model.getRowCount(),
+						  all.getPlus(), all.getMinus(), all.getAccounts());
+	}
+
+	/**
+	 * Runs in the background thread.
+	 *
+	 * @return the summary of all rows (built when first needed)
+	 *         or null if the computation has been overtaken
+	 */
+	private SelectionSummary getAllRows(final int gen) {
+		if ( allRows == null ) {
+			SelectionSummary all = new SelectionSummary(model);
+			int rowCount = model.getRowCount();
+			for ( int row = 0; row < rowCount; row++ ) {
+				if ( row % CHECK_INTERVAL == 0 &&
+					 gen != generation.get() ) {
+					return null;
+				}
+				all.setSelected(row, true);
+			}
+			allRows = all;
+		}
+		return allRows;
+	}
+
+}
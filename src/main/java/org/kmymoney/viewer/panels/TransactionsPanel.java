@@ -9,9 +9,6 @@ import java.awt.event.MouseEvent;
 import java.text.NumberFormat;
 import java.time.LocalDateTime;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.TreeSet;
 
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JComboBox;
@@ -22,6 +19,8 @@ import javax.swing.JTable;
 import javax.swing.JToolTip;
 import javax.swing.SwingUtilities;
 import javax.swing.event.ListSelectionListener;
+import javax.swing.event.RowSorterEvent;
+import javax.swing.event.RowSorterListener;
 import javax.swing.table.TableColumn;
 import javax.swing.table.TableModel;
 
@@ -30,14 +29,15 @@ import org.kmymoney.api.read.KMyMoneyTransaction;
 import org.kmymoney.api.read.KMyMoneyTransactionSplit;
 import org.kmymoney.viewer.Const;
 import org.kmymoney.viewer.actions.TransactionSplitAction;
+import org.kmymoney.viewer.data.Amounts;
+import org.kmymoney.viewer.models.KMyMoneyPagedAccountTransactionsTableModel;
 import org.kmymoney.viewer.models.KMyMoneySimpleAccountTransactionsTableModel;
 import org.kmymoney.viewer.models.KMyMoneyTransactionSplitsTableModel;
+import org.kmymoney.viewer.models.RegisterRowSorter;
 import org.kmymoney.viewer.widgets.MultiLineToolTip;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import xyz.schnorxoborx.base.numbers.FixedPointNumber;
-
 /**
  * This Panel shows a list of transactions.
  * These transactions currently can only be "all transactions
@@ -82,6 +82,15 @@ public class TransactionsPanel extends JPanel {
 	// The actions we have on Splits
 	private Collection<TransactionSplitAction> mySplitActions;
 
+	// Computes the summary of the selected rows in the background
+	private SelectionSummaryWorker mySummaryWorker;
+
+	// The accounts in the selectionSummaryAccountComboBox
+	private Collection<KMyMoneyAccount> myShownAccounts;
+
+	// Whether we are filling the selectionSummaryAccountComboBox ourselves
+	private boolean myIsUpdatingAccountList = false;
+
 	/**
 	 * @return Returns the model
 	 * @see #model
@@ -91,10 +100,10 @@ public class TransactionsPanel extends JPanel {
 	}
 
 	/**
-	 * @param aModel The model to set.
+	 * @param aModel The model to set (e.g. one of selected splits instead of an account's).
 	 * @see #model
 	 */
-	protected void setModel(final KMyMoneyTransactionSplitsTableModel aModel) {
+	public void setModel(final KMyMoneyTransactionSplitsTableModel aModel) {
 		if ( aModel == null ) {
 			throw new IllegalArgumentException("argument <aModel> is null"); //$NON-NLS-1$
 		}
@@ -105,8 +114,26 @@ public class TransactionsPanel extends JPanel {
 		}
 		model = aModel;
 
+		if ( mySummaryWorker != null ) {
+			mySummaryWorker.dispose();
+		}
+		mySummaryWorker = new SelectionSummaryWorker(getTransactionTable(), model, new SelectionSummaryWorker.Listener() {
+			public void summaryComputed(final SelectionSummaryWorker.Result result) {
+				showSelectionSummary(result);
+			}
+		});
+
 		getTransactionTable().setModel(model);
-		getTransactionTable().setAutoCreateRowSorter(true);
+		RegisterRowSorter sorter = new RegisterRowSorter(model);
+		sorter.addRowSorterListener(new RowSorterListener() {
+			public void sorterChanged(final RowSorterEvent e) {
+				if ( e.getType() == RowSorterEvent.Type.SORTED ) {
+					// view-rows have moved, so the next selection-event's range is not reliable
+					mySummaryWorker.rowsMoved();
+				}
+			}
+		});
+		getTransactionTable().setRowSorter(sorter);
 
 		TableColumn balanceColumn = null;
 		try {
@@ -157,8 +184,8 @@ public class TransactionsPanel extends JPanel {
 		getTransactionTable().getColumn(Messages_TransactionsPanel.getString("TransactionsPanel.6")).setCellRenderer(new DesriptionCellRenderer()); //$NON-NLS-1$
 		getTransactionTable().getColumn(Messages_TransactionsPanel.getString("TransactionsPanel.7")).setCellRenderer(new DesriptionCellRenderer()); //$NON-NLS-1$
 
-		updateSelectionSummaryAccountList();
-		updateSelectionSummary();
+		KMyMoneyAccount selectedAcct = (KMyMoneyAccount) getSelectionSummaryAccountComboBox().getSelectedItem();
+		mySummaryWorker.setAccount(selectedAcct);
 		getSingleTransactionPanel().setTransaction(null);
 
 	}
@@ -179,6 +206,8 @@ public class TransactionsPanel extends JPanel {
 	public void setAccount(final KMyMoneyAccount account) {
 		if ( account == null ) {
 			setModel(new KMyMoneySimpleAccountTransactionsTableModel());
+		} else if ( KMyMoneyPagedAccountTransactionsTableModel.isLarge(account) ) {
+			setModel(new KMyMoneyPagedAccountTransactionsTableModel(account));
 		} else {
 			setModel(new KMyMoneySimpleAccountTransactionsTableModel(account));
 		}
@@ -251,8 +280,8 @@ public class TransactionsPanel extends JPanel {
 					// because the user may reorder columns
 					//int realColumnIndex = convertColumnIndexToModel(columnAtPoint(p));
 					if ( rowIndex >= 0 ) {
-						KMyMoneySimpleAccountTransactionsTableModel model = (KMyMoneySimpleAccountTransactionsTableModel) getModel();
-						KMyMoneyTransactionSplit localSplit = model.getTransactionSplit(rowIndex);
+						KMyMoneyTransactionSplitsTableModel model = (KMyMoneyTransactionSplitsTableModel) getModel();
+						KMyMoneyTransactionSplit localSplit = model.getTransactionSplit(convertRowIndexToModel(rowIndex));
 						KMyMoneyTransaction trx = localSplit.getTransaction();
 						StringBuilder output = new StringBuilder();
 						output.append(trx.toString());
@@ -277,17 +306,22 @@ public class TransactionsPanel extends JPanel {
 
 			};
 
-			// add a listener to call updateSelectionSummary() every time
+			// add a listener to update the selection-summary every time
 			// the user changes the selected rows.
 			trxTab.getSelectionModel().addListSelectionListener(
 					new ListSelectionListener() {
 						public void valueChanged(
 								final javax.swing.event.ListSelectionEvent e) {
 							try {
-								updateSelectionSummaryAccountList();
-								updateSelectionSummary();
+								// collect the changed rows while the user is still selecting
+								mySummaryWorker.addChangedRows(e.getFirstIndex(), e.getLastIndex());
+								if ( e.getValueIsAdjusting() ) {
+									return;
+								}
+								mySummaryWorker.request();
+
 								if ( getTransactionTable().getSelectedRowCount() == 1 ) {
-									KMyMoneyTransactionSplit splt = model.getTransactionSplit(getTransactionTable().getSelectedRow());
+									KMyMoneyTransactionSplit splt = model.getTransactionSplit(getTransactionTable().convertRowIndexToModel(getTransactionTable().getSelectedRow()));
 									//                               setTransaction(transactionSplit.getTransaction());
 
 									getSingleTransactionPanel().setTransaction(splt.getTransaction());
@@ -342,7 +376,10 @@ public class TransactionsPanel extends JPanel {
 			selectionSummaryAccountComboBox.setEditable(false);
 			selectionSummaryAccountComboBox.addItemListener(new ItemListener() {
 				public void itemStateChanged(final java.awt.event.ItemEvent e) {
-					updateSelectionSummary();
+					if ( myIsUpdatingAccountList ) {
+						return;
+					}
+					mySummaryWorker.setAccount((KMyMoneyAccount) getSelectionSummaryAccountComboBox().getSelectedItem());
 				}
 
 				;
@@ -385,135 +422,45 @@ public class TransactionsPanel extends JPanel {
 	}
 
 	/**
-	 * Put all accounts into the model of
-	 * the selectionSummaryAccountComboBox.
+	 * Show a summary computed by {@link #mySummaryWorker}.
 	 */
-	private void updateSelectionSummaryAccountList() {
-		Set<KMyMoneyAccount> accounts = new TreeSet<KMyMoneyAccount>();
-
-		int selectedCount = getTransactionTable().getSelectedRowCount();
-		if ( selectedCount < 1 ) {
-			// get all accounts of all splits
-			int count = model.getRowCount();
-
-			for ( int i = 0; i < count; i++ ) {
-				KMyMoneyTransactionSplit transactionSplit = model.getTransactionSplit(i);
-
-				try {
-					KMyMoneyTransaction trx = transactionSplit.getTransaction();
-					if ( trx == null ) {
-						LOGGER.error("updateSelectionSummaryAccountList: Split has no transaction"); //$NON-NLS-1$
-					} else {
-						Collection<? extends KMyMoneyTransactionSplit> splits = trx.getSplits();
-						for ( KMyMoneyTransactionSplit splt : splits ) {
-							try {
-								KMyMoneyAccount acct = splt.getAccount();
-								if ( acct != null ) {
-									if ( ! accounts.contains(acct) ) {
-										accounts.add(acct);
-									}
-								}
-							}
-							catch (Exception x) {
-								System.err.println("Ignoring account in " //$NON-NLS-1$
-										+ "TransactionPanel::updateSelectionSummary" //$NON-NLS-1$
-										+ "AccountList() because of:"); //$NON-NLS-1$
-								x.printStackTrace(System.err);
-							}
-						}
-					}
-				}
-				catch (Exception e) {
-					LOGGER.error("updateSelectionSummaryAccountList: Problem in " //$NON-NLS-1$
-									+ getClass().getName(),
-							e);
-				}
-			}
-		} else {
-			// show a summary only for the selected transactions
-			int[] selectedRows = getTransactionTable().getSelectedRows();
-
-			for ( int selectedRow : selectedRows ) {
-				KMyMoneyTransactionSplit splt = model.getTransactionSplit(selectedRow);
-				Collection<? extends KMyMoneyTransactionSplit> splits = splt.getTransaction().getSplits();
-				for ( KMyMoneyTransactionSplit splt2 : splits ) {
-					if ( ! accounts.contains(splt2.getAccount()) ) {
-						accounts.add(splt2.getAccount());
-					}
-				}
-
-			}
-		}
-
-		DefaultComboBoxModel aModel = new DefaultComboBoxModel();
-		for ( KMyMoneyAccount acct : accounts ) {
-			aModel.addElement(acct);
+	private void showSelectionSummary(final SelectionSummaryWorker.Result result) {
+		updateSelectionSummaryAccountList(result.getAccounts());
+
+		KMyMoneyAccount selectedAcct = (KMyMoneyAccount) getSelectionSummaryAccountComboBox().getSelectedItem();
+		if ( selectedAcct == null ? result.getAccount() != null : ! selectedAcct.equals(result.getAccount()) ) {
+			// the account-list has been reset, so the result is no longer what is asked for
+			mySummaryWorker.setAccount(selectedAcct);
+			return;
 		}
 
-		JComboBox list = getSelectionSummaryAccountComboBox();
-		list.setModel(aModel);
-		list.setSelectedIndex(-1);
+		updateSelectionSummary(result);
 	}
 
 	/**
-	 * If the user has selected an account to display a summary for,
-	 * we add all splits of the given split's transaction that have
-	 * that account. If nothing is selected, we add the given split.
-	 *
-	 * @param retval the list of splits to add to
-	 * @param splt  the split who's transaction to look at
+	 * Put all accounts into the model of
+	 * the selectionSummaryAccountComboBox
+	 * (only if they have changed).
 	 */
-	private void replaceSplitsWithSelectedAccountsSplits(final Set<KMyMoneyTransactionSplit> retval, final KMyMoneyTransactionSplit splt) {
-		JComboBox combo = getSelectionSummaryAccountComboBox();
-		KMyMoneyAccount selectedAcct = (KMyMoneyAccount) combo.getSelectedItem();
-		
-		if ( selectedAcct == null ) {
-			retval.add(splt);
-		} else {
-			KMyMoneyTransaction trx = splt.getTransaction();
-			for ( KMyMoneyTransactionSplit splt2 : trx.getSplits() ) {
-				if ( splt2 == null ) {
-					continue;
-				}
-				KMyMoneyAccount acct = splt2.getAccount();
-				if ( acct != null && 
-					 acct.equals(selectedAcct) ) {
-					retval.add(splt2);
-				}
-			}
+	private void updateSelectionSummaryAccountList(final Collection<KMyMoneyAccount> accounts) {
+		if ( accounts.equals(myShownAccounts) ) {
+			return;
 		}
+		myShownAccounts = accounts;
 
-	}
-
-	/**
-	 * If the user has selected an account to display a summary for,
-	 * we return all splits of the selected transactions that belong
-	 * to that account. Else, we return all selected Splits.
-	 * If no Splits are selected, we use all splits as the selected
-	 * ones.
-	 *
-	 * @return the splits of the selected/all transactions featuring this/the
-	 * selected account.
-	 */
-	private Collection<KMyMoneyTransactionSplit> getSplitsForSummary() {
-		int[] selectedRows = getTransactionTable().getSelectedRows();
-		Set<KMyMoneyTransactionSplit> retval = new HashSet<KMyMoneyTransactionSplit>();
-
-		if ( selectedRows == null || 
-			 selectedRows.length == 0 ) {
-			int count = model.getRowCount();
-			for ( int i = 0; i < count; i++ ) {
-				KMyMoneyTransactionSplit splt = model.getTransactionSplit(i);
-				replaceSplitsWithSelectedAccountsSplits(retval, splt);
-			}
-		} else {
-			for ( int selectedRow : selectedRows ) {
-				KMyMoneyTransactionSplit splt = model.getTransactionSplit(selectedRow);
-				replaceSplitsWithSelectedAccountsSplits(retval, splt);
-			}
+		DefaultComboBoxModel aModel = new DefaultComboBoxModel();
+		for ( KMyMoneyAccount acct : accounts ) {
+			aModel.addElement(acct);
 		}
 
-		return retval;
+		JComboBox list = getSelectionSummaryAccountComboBox();
+		myIsUpdatingAccountList = true;
+		try {
+			list.setModel(aModel);
+			list.setSelectedIndex(-1);
+		} finally {
+			myIsUpdatingAccountList = false;
+		}
 	}
 
 	/**
@@ -521,39 +468,25 @@ public class TransactionsPanel extends JPanel {
 	 * to show summary-information about the currently
 	 * selected transactions.
 	 */
-	private void updateSelectionSummary() {
-		int selectedCount = getTransactionTable().getSelectedRowCount();
-		FixedPointNumber valueSumPlus = new FixedPointNumber(0);
-		FixedPointNumber valueSumMinus = new FixedPointNumber(0);
-		FixedPointNumber valueSumBalance = new FixedPointNumber(0);
-		NumberFormat currencyFormat = NumberFormat.getCurrencyInstance();
-
-		Collection<KMyMoneyTransactionSplit> splits;
-		splits = getSplitsForSummary();
-		for ( KMyMoneyTransactionSplit splt : splits ) {
-			FixedPointNumber value = splt.getValue();
-			valueSumBalance.add(value);
-			if ( value.isPositive() ) {
-				valueSumPlus.add(value);
-			} else {
-				valueSumMinus.add(value);
-			}
-		}
+	private void updateSelectionSummary(final SelectionSummaryWorker.Result result) {
+		long valueSumPlus = result.getPlus();
+		long valueSumMinus = result.getMinus();
 
-		if ( selectedCount < 1 ) {
+		NumberFormat currencyFormat = KMyMoneySimpleAccountTransactionsTableModel.DEFAULT_CURRENCY_FORMAT;
+		if ( result.getSelectedCount() < 1 ) {
 			// show a summary for all transactions displayed
-			int count = model.getRowCount();
+			int count = result.getRowCount();
 			getSelectionSummaryLabel().setText(count + Messages_TransactionsPanel.getString("TransactionsPanel.39") //$NON-NLS-1$
-					+ currencyFormat.format(valueSumPlus)
-					+ currencyFormat.format(valueSumMinus)
-					+ "=" + currencyFormat.format(valueSumBalance)); //$NON-NLS-1$
+					+ currencyFormat.format(Amounts.toBigDecimal(valueSumPlus))
+					+ currencyFormat.format(Amounts.toBigDecimal(valueSumMinus))
+					+ "=" + currencyFormat.format(Amounts.toBigDecimal(valueSumPlus + valueSumMinus))); //$NON-NLS-1$
 		} else {
 			// show a summary only for the selected transactions
-			getSelectionSummaryLabel().setText(selectedCount
+			getSelectionSummaryLabel().setText(result.getSelectedCount()
 					+ Messages_TransactionsPanel.getString("TransactionsPanel.41") //$NON-NLS-1$
-					+ currencyFormat.format(valueSumPlus)
-					+ currencyFormat.format(valueSumMinus)
-					+ "=" + currencyFormat.format(valueSumBalance)); //$NON-NLS-1$
+					+ currencyFormat.format(Amounts.toBigDecimal(valueSumPlus))
+					+ currencyFormat.format(Amounts.toBigDecimal(valueSumMinus))
+					+ "=" + currencyFormat.format(Amounts.toBigDecimal(valueSumPlus + valueSumMinus))); //$NON-NLS-1$
 		}
 
 	}
@@ -566,12 +499,12 @@ public class TransactionsPanel extends JPanel {
 		if ( temp != null && 
 			 temp instanceof KMyMoneyTransactionSplitsTableModel ) {
 			KMyMoneyTransactionSplitsTableModel tblModel = (KMyMoneyTransactionSplitsTableModel) temp;
-			int max = tblModel.getRowCount();
-			for ( int i = 0; i < max; i++ ) {
-				if ( tblModel.getTransactionSplit(i).getTransaction().getID().equals( trx.getID() ) ) {
-					getTransactionTable().getSelectionModel().setSelectionInterval(i, i);
-					return;
-				}
+			int modelRow = tblModel.getRowOfTransaction(trx);
+			int viewRow = modelRow < 0 ? -1 : getTransactionTable().convertRowIndexToView(modelRow);
+			if ( viewRow >= 0 ) {
+				getTransactionTable().getSelectionModel().setSelectionInterval(viewRow, viewRow);
+				getTransactionTable().scrollRectToVisible(getTransactionTable().getCellRect(viewRow, 0, true));
+				return;
 			}
 		}
 		
@@ -0,0 +1,370 @@
+package org.kmymoney.viewer.widgets;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.kmymoney.viewer.data.BookIndex;
+import org.kmymoney.viewer.data.CompactBook;
+import org.kmymoney.viewer.data.TransactionBitmap;
+
+/**
+ * Sums up the shares of the splits of a compact book for a batch of queries
+ * (one per {@link TransactionSum}) in a single pass over the transactions:
+ * every split is routed to the queries that sum up its account.
+ * <br>
+ * The pass is split into ranges of transactions on the fork/join-pool,
+ * halving them until they are small enough. As the sums are longs,
+ * the result does not depend on how the ranges have been split.
+ * <br>
+ * Only shares that are exact in units (cf. {@link CompactBook#isSplitExact(int)})
+ * of accounts that need no conversion are summed up as longs. All other splits 
+ * of a query are collected (cf. {@link Query#getSplits()}), so that the caller
+ * can add them up split by split, exactly as without the compact book.
+ */
+final class SharedSumScan extends RecursiveTask<SharedSumScan.Result> {
+
+	private static final long serialVersionUID = 1L;
+
+	// Ranges of fewer transactions are summed up sequentially
+	// ::MAGIC
+	private static final int SEQUENTIAL_THRESHOLD = 16 * 1024;
+
+	/**
+	 * What to sum up for one {@link TransactionSum}.
+	 */
+	static final class Query {
+
+		// Per account-ordinal: whether its splits are summed up
+		private final boolean[] myAccounts;
+
+		// Per account-ordinal: whether its splits are collected instead of summed up
+		private final boolean[] myPerSplit;
+
+		// The transactions to look at
+		private final TransactionBitmap myTransactions;
+
+		private final boolean myInflow;
+		private final boolean myOutflow;
+
+		// The ranges of transactions to look at: myRanges[2i] .. myRanges[2i + 1] - 1
+		private final int[] myRanges;
+
+		// The sums per account-ordinal, followed by the number of splits
+		private final long[] mySums;
+
+		// The collected splits (ascending)
+		private int[] mySplits;
+
+		/**
+		 * @param accounts     per account-ordinal: whether its splits are summed up
+		 * @param perSplit     per account-ordinal: whether its splits are to be collected
+		 *                     instead (e.g. as their shares have to be converted)
+		 * @param transactions the transactions to look at
+		 * @param inflow       whether to sum up positive shares
+		 * @param outflow      whether to sum up the other shares
+		 * @param ranges       the ranges of transactions to look at (from, to, from, to, ...)
+		 * @param sums         what to add the scan's sums to (per account-ordinal, then the number of splits)
+		 * @param splits       what to add the scan's collected splits to
+		 */
+		Query(final boolean[] accounts, final boolean[] perSplit, final TransactionBitmap transactions,
+				final boolean inflow, final boolean outflow, final int[] ranges, final long[] sums,
+				final int[] splits) {
+			myAccounts = accounts;
+			myPerSplit = perSplit;
+			myTransactions = transactions;
+			myInflow = inflow;
+			myOutflow = outflow;
+			myRanges = ranges;
+			mySums = sums;
+			mySplits = splits;
+		}
+
+		/**
+		 * @return the sums per account-ordinal, followed by the number of splits
+		 */
+		long[] getSums() {
+			return mySums;
+		}
+
+		/**
+		 * @return the splits that have been collected instead of summed up, ascending
+		 *         (inexact splits and those of the accounts to collect; regardless of 
+		 *         inflow and outflow, i.e. the caller has to check their shares)
+		 */
+		int[] getSplits() {
+			return mySplits;
+		}
+
+		private boolean isInRange(final int trxOrd) {
+			for (int i = 0; i < myRanges.length; i += 2) {
+				if (myRanges[i] <= trxOrd && trxOrd < myRanges[i + 1]) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private boolean isCounted(final long shares) {
+			return shares > 0 ? myInflow : myOutflow;
+		}
+
+		/**
+		 * Like {@link #isCounted(long)}, by the exact shares of the split 
+		 * (as {@link TransactionSum} does it for the collected splits).
+		 */
+		private boolean isCounted(final KMyMoneyTransactionSplit split) {
+			return split.getShares().isPositive() ? myInflow : myOutflow;
+		}
+	}
+
+	/**
+	 * What the scan of a range of transactions has found.
+	 */
+	static final class Result {
+
+		// Per query: the sum per account-ordinal, followed by the number of splits
+		private final long[][] mySums;
+
+		// Per query: the collected splits (the first myNofSplits[q])
+		private final int[][] mySplits;
+		private final int[] myNofSplits;
+
+		private Result(final int nofQueries, final int nofAccts) {
+			mySums = new long[nofQueries][nofAccts + 1];
+			mySplits = new int[nofQueries][];
+			myNofSplits = new int[nofQueries];
+		}
+
+		private void addSplit(final int q, final int splt) {
+			if (mySplits[q] == null) {
+				mySplits[q] = new int[16];
+			} else if (myNofSplits[q] == mySplits[q].length) {
+				mySplits[q] = Arrays.copyOf(mySplits[q], 2 * myNofSplits[q]);
+			}
+			mySplits[q][myNofSplits[q]++] = splt;
+		}
+
+		/**
+		 * @param later the result of the range after this one
+		 */
+		private void add(final Result later) {
+			for (int q = 0; q < mySums.length; q++) {
+				for (int i = 0; i < mySums[q].length; i++) {
+					mySums[q][i] += later.mySums[q][i];
+				}
+				for (int i = 0; i < later.myNofSplits[q]; i++) {
+					addSplit(q, later.mySplits[q][i]);
+				}
+			}
+		}
+	}
+
+	// ---------------------------------------------------------------
+
+	private final CompactBook myBook;
+	private final Query[] myQueries;
+
+	// Per account-ordinal: the queries that sum up its splits
+	private final int[][] myQueriesOfAccount;
+
+	// The transactions of any of the queries
+	private final TransactionBitmap myTransactions;
+
+	private final int myFrom;
+	private final int myTo;
+
+	// ---------------------------------------------------------------
+
+	private SharedSumScan(final CompactBook book, final Query[] queries, final int[][] queriesOfAccount,
+			final TransactionBitmap transactions, final int from, final int to) {
+		myBook = book;
+		myQueries = queries;
+		myQueriesOfAccount = queriesOfAccount;
+		myTransactions = transactions;
+		myFrom = from;
+		myTo = to;
+	}
+
+	/**
+	 * Add the sums of the queries' splits to their sums.
+	 *
+	 * @param book    the compact book
+	 * @param queries the queries
+	 */
+	static void run(final CompactBook book, final List<Query> queries) {
+		if (book == null) {
+			throw new IllegalArgumentException("argument <book> is null");
+		}
+
+		if (queries == null) {
+			throw new IllegalArgumentException("argument <queries> is null");
+		}
+
+		int nofAccts = book.getAccountCount();
+		int universe = book.getTransactionCount();
+		int from = Integer.MAX_VALUE;
+		int to = Integer.MIN_VALUE;
+		TransactionBitmap transactions = TransactionBitmap.EMPTY;
+		int[] nofQueriesOfAccount = new int[nofAccts];
+		for (Query query : queries) {
+			for (int i = 0; i < query.myRanges.length; i += 2) {
+				if (query.myRanges[i] < query.myRanges[i + 1]) {
+					from = Math.min(from, query.myRanges[i]);
+					to = Math.max(to, query.myRanges[i + 1]);
+				}
+			}
+			transactions = transactions.or(query.myTransactions, universe);
+			for (int acct = 0; acct < nofAccts; acct++) {
+				if (query.myAccounts[acct]) {
+					nofQueriesOfAccount[acct]++;
+				}
+			}
+		}
+		if (from >= to) {
+			return;
+		}
+
+		int[][] queriesOfAccount = new int[nofAccts][];
+		for (int acct = 0; acct < nofAccts; acct++) {
+			queriesOfAccount[acct] = new int[nofQueriesOfAccount[acct]];
+		}
+		Arrays.fill(nofQueriesOfAccount, 0);
+		for (int q = 0; q < queries.size(); q++) {
+			for (int acct = 0; acct < nofAccts; acct++) {
+				if (queries.get(q).myAccounts[acct]) {
+					queriesOfAccount[acct][nofQueriesOfAccount[acct]++] = q;
+				}
+			}
+		}
+
+		Result result = ForkJoinPool.commonPool().invoke(
+				new SharedSumScan(book, queries.toArray(new Query[queries.size()]),
+						queriesOfAccount, transactions, from, to));
+		for (int q = 0; q < queries.size(); q++) {
+			Query query = queries.get(q);
+			long[] sums = query.mySums;
+			for (int i = 0; i < sums.length; i++) {
+				sums[i] += result.mySums[q][i];
+			}
+			if (result.myNofSplits[q] > 0) {
+				int[] splits = Arrays.copyOf(query.mySplits, query.mySplits.length + result.myNofSplits[q]);
+				System.arraycopy(result.mySplits[q], 0, splits, query.mySplits.length, result.myNofSplits[q]);
+				// (the ranges need not be in order)
+				Arrays.sort(splits);
+				query.mySplits = splits;
+			}
+		}
+	}
+
+	/**
+	 * Look for the splits of a query (sequentially), i.e. the ones
+	 * {@link #run(CompactBook, List)} would sum up or collect.
+	 * Whether the shares of a split that is not exact in units are counted
+	 * as in- or outflow is decided by the split of the file, as when summing up.
+	 *
+	 * @param index the index of the file (with the compact book)
+	 * @param query the query
+	 * @return the split-ordinals of the query's splits, ascending
+	 */
+	static int[] collectSplits(final BookIndex index, final Query query) {
+		if (index == null) {
+			throw new IllegalArgumentException("argument <index> is null");
+		}
+
+		if (query == null) {
+			throw new IllegalArgumentException("argument <query> is null");
+		}
+
+		CompactBook book = index.getCompactBook();
+		int[] result = new int[16];
+		int n = 0;
+		for (int i = 0; i < query.myRanges.length; i += 2) {
+			int to = query.myRanges[i + 1];
+			for (int trx = query.myTransactions.nextSetBit(query.myRanges[i]); trx >= 0 && trx < to; trx = query.myTransactions.nextSetBit(trx + 1)) {
+				for (int splt = book.getTransactionSplitStart(trx); splt < book.getTransactionSplitEnd(trx); splt++) {
+					int acct = book.getSplitAccount(splt);
+					if (acct == CompactBook.NO_ACCOUNT || !query.myAccounts[acct]) {
+						continue;
+					}
+					KMyMoneyTransactionSplit split = book.isSplitExact(splt) ? null : index.getSplit(splt);
+					if (split == null ? !query.isCounted(book.getSplitShares(splt)) : !query.isCounted(split)) {
+						continue;
+					}
+					if (n == result.length) {
+						result = Arrays.copyOf(result, 2 * n);
+					}
+					result[n++] = splt;
+				}
+			}
+		}
+		// (the ranges need not be in order)
+		result = Arrays.copyOf(result, n);
+		Arrays.sort(result);
+		return result;
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * @return per query: the sums and the collected splits of the range
+	 */
+	@Override
+	protected Result compute() {
+		if (myTo - myFrom <= SEQUENTIAL_THRESHOLD) {
+			return computeSequentially();
+		}
+
+		int mid = (myFrom + myTo) >>> 1;
+		SharedSumScan second = new SharedSumScan(myBook, myQueries, myQueriesOfAccount, myTransactions, mid, myTo);
+		second.fork();
+		Result result = new SharedSumScan(myBook, myQueries, myQueriesOfAccount, myTransactions, myFrom, mid).compute();
+		result.add(second.join());
+		return result;
+	}
+
+	private Result computeSequentially() {
+		int nofAccts = myQueriesOfAccount.length;
+		Result result = new Result(myQueries.length, nofAccts);
+
+		// Per query: its next transaction at or after the current one
+		int[] next = new int[myQueries.length];
+		Arrays.fill(next, -1);
+
+		for (int trx = myTransactions.nextSetBit(myFrom); trx >= 0 && trx < myTo; trx = myTransactions.nextSetBit(trx + 1)) {
+			for (int splt = myBook.getTransactionSplitStart(trx); splt < myBook.getTransactionSplitEnd(trx); splt++) {
+				int acct = myBook.getSplitAccount(splt);
+				if (acct == CompactBook.NO_ACCOUNT) {
+					continue;
+				}
+
+				long shares = myBook.getSplitShares(splt);
+				boolean exact = myBook.isSplitExact(splt);
+				for (int q : myQueriesOfAccount[acct]) {
+					Query query = myQueries[q];
+					boolean collect = !exact || query.myPerSplit[acct];
+					if ((!collect && !query.isCounted(shares)) || !query.isInRange(trx)) {
+						continue;
+					}
+					if (next[q] < trx) {
+						int nextTrx = query.myTransactions.nextSetBit(trx);
+						next[q] = nextTrx < 0 ? Integer.MAX_VALUE : nextTrx;
+					}
+					if (next[q] != trx) {
+						continue;
+					}
+					if (collect) {
+						result.addSplit(q, splt);
+					} else {
+						result.mySums[q][acct] += shares;
+						result.mySums[q][nofAccts]++;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+}
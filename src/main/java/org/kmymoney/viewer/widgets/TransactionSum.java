@@ -1,25 +1,50 @@
 package org.kmymoney.viewer.widgets;
 
 import java.awt.BorderLayout;
+import java.awt.Cursor;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.WindowConstants;
 
 import org.kmymoney.api.currency.ComplexPriceTable;
 import org.kmymoney.api.read.KMyMoneyAccount;
 import org.kmymoney.api.read.KMyMoneyFile;
 import org.kmymoney.api.read.KMyMoneyTransaction;
 import org.kmymoney.api.read.KMyMoneyTransactionSplit;
-import org.kmymoney.base.basetypes.complex.KMMComplAcctID;
 import org.kmymoney.base.basetypes.complex.KMMQualifSecCurrID;
+import org.kmymoney.viewer.data.AccountHierarchy;
+import org.kmymoney.viewer.data.AccountTransactionIndex;
+import org.kmymoney.viewer.data.Amounts;
+import org.kmymoney.viewer.data.BookIndex;
+import org.kmymoney.viewer.data.CompactBook;
+import org.kmymoney.viewer.data.ConversionRates;
+import org.kmymoney.viewer.data.PeriodTotals;
+import org.kmymoney.viewer.data.TransactionBitmap;
+import org.kmymoney.viewer.models.KMyMoneyPagedAccountTransactionsTableModel;
+import org.kmymoney.viewer.panels.TransactionsPanel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,7 +54,12 @@ import xyz.schnorxoborx.base.numbers.FixedPointNumber;
  * This panel displays a sum of all transaction-splits that are
  * to any of a list of accounts belonging to transactions with at
  * least one split in another list of accounts.<br/>
- * It is very handy for tax- and other reports.
+ * It is very handy for tax- and other reports.<br/>
+ * The sum is calculated in the background whenever a property changes;
+ * to change several of them with a single calculation, use 
+ * {@link #beginUpdate()}/{@link #commitUpdate()} or a {@link Builder}.<br/>
+ * Clicking the number of splits right of the sum opens a register
+ * of these splits; they are looked up only then.
  */
 public class TransactionSum extends JPanel {
 
@@ -46,6 +76,12 @@ public class TransactionSum extends JPanel {
 	 */
 	private static final Logger LOGGER = LoggerFactory.getLogger(TransactionSum.class);
 
+	/**
+	 * If this system property is "true", every sum is calculated both with and
+	 * without the indexes of the file and the times are logged.
+	 */
+	public static final String BENCHMARK_PROPERTY = "kmymoney.viewer.benchmark.transactionsum";
+
 	/**
 	 * The financial data we operate on.
 	 */
@@ -157,7 +193,8 @@ public class TransactionSum extends JPanel {
 	private final JLabel myDrilldownLabel = new JLabel();
 
 	/**
-	 * The latest value calculated by {@link #reCalculate()}.
+	 * The latest value calculated by {@link #reCalculate()}
+	 * (null while the first calculation is running).
 	 */
 	private FixedPointNumber myValue = null;
 
@@ -166,6 +203,128 @@ public class TransactionSum extends JPanel {
 	 */
 	private int myTransactionsCounted = -1;
 
+	/**
+	 * The calculation of the value shown, to look up its
+	 * splits for the drill-down (null if there is none).
+	 */
+	private Calculation myDrilldown = null;
+
+	/**
+	 * Nesting-depth of {@link #beginUpdate()}.
+	 */
+	private int myUpdateDepth = 0;
+
+	/**
+	 * Whether a property has changed during the current batch-update.
+	 */
+	private boolean myNeedsRecalculation = false;
+
+	/**
+	 * Incremented with each {@link #reCalculate()}, so that
+	 * only the result of the latest calculation is shown.
+	 */
+	private final AtomicInteger myGeneration = new AtomicInteger();
+
+	/**
+	 * The sums of all widgets are calculated in batches
+	 * by a single background thread.
+	 */
+	private static final ExecutorService CALCULATOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(final Runnable r) {
+			Thread thread = new Thread(r, "TransactionSum-calculator");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * The calculations started on the event-thread since the last batch
+	 * (only accessed on the event-thread).
+	 */
+	private static final List<Calculation> PENDING = new ArrayList<Calculation>();
+
+	/**
+	 * Collects the properties of a {@link TransactionSum},
+	 * so that it is calculated only once when it is built.
+	 */
+	public static final class Builder {
+		private final KMyMoneyFile myBooks;
+		private Set<KMyMoneyAccount> mySourceAccounts = new HashSet<KMyMoneyAccount>();
+		private Set<KMyMoneyAccount> myTargetAccounts = new HashSet<KMyMoneyAccount>();
+		private SUMMATIONTYPE mySummationType = SUMMATIONTYPE.ALL;
+		private String myName = "";
+		private LocalDate myMinDate = null;
+		private LocalDate myMaxDate = null;
+
+		/**
+		 * @param books The financial data we operate on.
+		 */
+		public Builder(final KMyMoneyFile books) {
+			if (books == null) {
+				throw new IllegalArgumentException("null 'books' given!");
+			}
+
+			myBooks = books;
+		}
+
+		/**
+		 * @param sourceAccounts We only operate on transactions that
+		 *                       contain one of these accounts.
+		 * @return this builder
+		 */
+		public Builder sourceAccounts(final Set<KMyMoneyAccount> sourceAccounts) {
+			mySourceAccounts = sourceAccounts;
+			return this;
+		}
+
+		/**
+		 * @param targetAccounts We sum all transaction-splits that are to
+		 *                       one of these accounts.
+		 * @return this builder
+		 */
+		public Builder targetAccounts(final Set<KMyMoneyAccount> targetAccounts) {
+			myTargetAccounts = targetAccounts;
+			return this;
+		}
+
+		/**
+		 * @param summationType The type of summations we are to calculate.
+		 * @return this builder
+		 */
+		public Builder summationType(final SUMMATIONTYPE summationType) {
+			mySummationType = summationType;
+			return this;
+		}
+
+		/**
+		 * @param name the name to display left of the sum
+		 * @return this builder
+		 */
+		public Builder name(final String name) {
+			myName = name;
+			return this;
+		}
+
+		/**
+		 * @param minDate We ignore all transactions that are before this date.
+		 * @param maxDate We ignore all transactions that are after this date.
+		 * @return this builder
+		 */
+		public Builder dateRange(final LocalDate minDate, final LocalDate maxDate) {
+			myMinDate = minDate;
+			myMaxDate = maxDate;
+			return this;
+		}
+
+		/**
+		 * @return the widget (its sum is calculated in the background)
+		 */
+		public TransactionSum build() {
+			return new TransactionSum(myBooks, mySourceAccounts, myTargetAccounts,
+					mySummationType, myName, myMinDate, myMaxDate);
+		}
+	}
+
 	/**
 	 * @param books          The financial data we operate on.
 	 * @param summationType  The type of summations we are to calculate.
@@ -186,16 +345,76 @@ public class TransactionSum extends JPanel {
 			final LocalDate maxDate) {
 		initializeUI(name);
 		setName(name);
-		setBooks(books);
-		setSummationType(summationType);
-		setSourceAccounts(sourceAccounts);
-		setTargetAccounts(targetAccounts);
-		setMinDate(minDate);
-		setMaxDate(maxDate);
+		beginUpdate();
+		try {
+			setBooks(books);
+			setSummationType(summationType);
+			setSourceAccounts(sourceAccounts);
+			setTargetAccounts(targetAccounts);
+			setMinDate(minDate);
+			setMaxDate(maxDate);
+		} finally {
+			commitUpdate();
+		}
 	}
 
 	/**
-	 * Do the actual calculation.
+	 * Start changing several properties at once: the sum is
+	 * not recalculated before the matching {@link #commitUpdate()}.
+	 * Calls may be nested.
+	 */
+	public void beginUpdate() {
+		myUpdateDepth++;
+	}
+
+	/**
+	 * Finish changing several properties at once
+	 * and recalculate the sum (once) if any of them has changed.
+	 *
+	 * @see #beginUpdate()
+	 */
+	public void commitUpdate() {
+		if (myUpdateDepth == 0) {
+			throw new IllegalStateException("commitUpdate() without beginUpdate()");
+		}
+
+		myUpdateDepth--;
+		if (myUpdateDepth == 0 && myNeedsRecalculation) {
+			myNeedsRecalculation = false;
+			reCalculate();
+		}
+	}
+
+	/**
+	 * Change both ends of the date-range with a single recalculation.
+	 *
+	 * @param aMinDate We ignore all transactions that are before this date.
+	 * @param aMaxDate We ignore all transactions that are after this date.
+	 */
+	public void setDateRange(final LocalDate aMinDate, final LocalDate aMaxDate) {
+		beginUpdate();
+		try {
+			setMinDate(aMinDate);
+			setMaxDate(aMaxDate);
+		} finally {
+			commitUpdate();
+		}
+	}
+
+	/**
+	 * Recalculate the sum now or, during a batch-update, on its commit.
+	 */
+	private void reCalculateLater() {
+		if (myUpdateDepth > 0) {
+			myNeedsRecalculation = true;
+			return;
+		}
+		reCalculate();
+	}
+
+	/**
+	 * Do the actual calculation (in the background)
+	 * and show its result when it is done.
 	 */
 	private void reCalculate() {
 		if (getSummationType() == null
@@ -205,197 +424,631 @@ public class TransactionSum extends JPanel {
 				//|| getMinDate() == null
 				//|| getMaxDate() == null
 				|| getBooks() == null) {
+			myGeneration.incrementAndGet();
 			mySumLabel.setText("---");
+			setDrilldown(null);
 			return;
 		}
-		myTransactionsCounted = 0;
-
-		Set<KMyMoneyAccount> sourceAccounts = new HashSet<KMyMoneyAccount>(
-				getSourceAccounts());
-		Set<KMyMoneyAccount> targetAccounts = new HashSet<KMyMoneyAccount>(
-				buildTransitiveClosure(getTargetAccounts()));
-		Set<KMMComplAcctID> targetAccountsIDs = new HashSet<KMMComplAcctID>();
-		for (KMyMoneyAccount targetAccount : targetAccounts) {
-			targetAccountsIDs.add(targetAccount.getID());
-		}
-
-		////////////////////////////////////
-		// find all applicable transacion
-		Set<KMyMoneyTransactionSplit> transactions = new HashSet<KMyMoneyTransactionSplit>();
-		FixedPointNumber sum = new FixedPointNumber(0);
-		if (sourceAccounts.size() == 0) {
-			LOGGER.warn("There are no source-accounts given for this transaction-sum");
-		}
-		for (KMyMoneyAccount sourceAccount : sourceAccounts) {
-			FixedPointNumber addMe =
-					buildSum(sourceAccount,
-							targetAccountsIDs,
-							sourceAccount.getQualifSecCurrID(),
-							transactions);
-			if (addMe == null) {
-				mySumLabel.setText("   cannot determine sum");
-				sum = null;
-				break;
-			}
-			sum = sum.add(addMe);
-		}
-
-		setValue(sum);
-		////////////////////////////////////
-		// set output
-		Iterator<KMyMoneyAccount> iterator = targetAccounts.iterator();
-		if (iterator.hasNext()) {
-			mySumLabel.setText("   " + sum.toString() + ""
-					+ iterator.next().getQualifSecCurrID());
-		} else {
-			Iterator<KMyMoneyAccount> iterator2 = sourceAccounts.iterator();
-			if (iterator2.hasNext()) {
-				mySumLabel.setText("   " + sum.toString() + ""
-						+ iterator2.next().getQualifSecCurrID());
-			} else {
-				mySumLabel.setText("   no account");
-			}
+
+		PENDING.add(new Calculation(this, myGeneration.incrementAndGet()));
+		mySumLabel.setText("...∑");
+		setDrilldown(null);
+		if (PENDING.size() == 1) {
+			// everything recalculated until the event-queue gets here is calculated together
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					submitPending();
+				}
+			});
 		}
 	}
 
 	/**
-	 * @param alreadyHandled all transactions we have already visited (if multiple target-accounts are involved)
+	 * Calculate the sum right away on the calling thread, split by split
+	 * or in a scan of the file's indexes of its own (for tests).
+	 *
+	 * @param indexed    whether to sum up in a scan (the indexes of the file must have been built)
+	 * @param withTotals whether the scan may use the file's {@link PeriodTotals}
 	 */
-	private FixedPointNumber buildSum(final KMyMoneyAccount aSourceAccount,
-			final Set<KMMComplAcctID> aTargetAccountsIDs,
-			final KMMQualifSecCurrID currencyID,
-			final Set<KMyMoneyTransactionSplit> alreadyHandled) {
+	void calculateNow(final boolean indexed, final boolean withTotals) {
+		// (a calculation still running in the background is not shown)
+		Calculation calculation = new Calculation(this, myGeneration.incrementAndGet());
+		calculation.runNow(indexed, withTotals);
+		setValue(calculation.mySum);
+		myTransactionsCounted = calculation.myTransactionsCounted;
+	}
+
+	/**
+	 * Calculate all pending calculations as one batch
+	 * and show their results when they are done.
+	 */
+	private static void submitPending() {
+		final List<Calculation> batch = new ArrayList<Calculation>(PENDING);
+		PENDING.clear();
+		CALCULATOR.execute(new Runnable() {
+			public void run() {
+				Calculation.runAll(batch);
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						for (Calculation calculation : batch) {
+							calculation.publish();
+						}
+					}
+				});
+			}
+		});
+	}
 
-		FixedPointNumber sum = new FixedPointNumber();
-		for (Object element : aSourceAccount.getChildren()) {
-			KMyMoneyAccount child = (KMyMoneyAccount) element;
-			sum = sum.add(buildSum(child, aTargetAccountsIDs, currencyID, alreadyHandled));
+	/**
+	 * One calculation of the sum, on a copy of the
+	 * properties it has been started with.
+	 * <br>
+	 * The calculations of a batch that use the same file are summed up
+	 * in a single pass over its splits (cf. {@link SharedSumScan}).
+	 */
+	private static final class Calculation {
+
+		private final TransactionSum myWidget;
+		private final int myGeneration;
+
+		private final KMyMoneyFile myBooks;
+		private final Set<KMyMoneyAccount> mySourceAccounts;
+		private final Set<KMyMoneyAccount> myTargetAccounts;
+		private final SUMMATIONTYPE mySummationType;
+		private final LocalDate myMinDate;
+		private final LocalDate myMaxDate;
+
+		// Set up by prepare()
+		private BookIndex myIndex = null;
+		private AccountHierarchy myHierarchy = null;
+		private BitSet myTargetNodes = null;
+
+		// The source-accounts of a shared scan and its query
+		// (the source-account of account-ordinal a is mySources.get(myOwner[a]))
+		private List<KMyMoneyAccount> mySources = null;
+		private int[] myOwner = null;
+		private SharedSumScan.Query myQuery = null;
+
+		// The results
+		private FixedPointNumber mySum = null;
+		private int myTransactionsCounted = 0;
+		private String myText = null;
+
+		private Calculation(final TransactionSum aSum, final int aGeneration) {
+			myWidget = aSum;
+			myGeneration = aGeneration;
+			myBooks = aSum.getBooks();
+			mySourceAccounts = new HashSet<KMyMoneyAccount>(aSum.getSourceAccounts());
+			myTargetAccounts = new HashSet<KMyMoneyAccount>(aSum.getTargetAccounts());
+			mySummationType = aSum.getSummationType();
+			myMinDate = aSum.getMinDate();
+			myMaxDate = aSum.getMaxDate();
 		}
 
-		List<? extends KMyMoneyTransactionSplit> splits
-				= aSourceAccount.getTransactionSplits();
-		for (KMyMoneyTransactionSplit split : splits) {
-			KMyMoneyTransaction transaction = split.getTransaction();
-			if (getMinDate() != null && transaction.getDatePosted().isBefore( getMinDate()) ) {
-				continue;
+		/**
+		 * Run a batch of calculations, those of the same file in a shared scan.
+		 */
+		private static void runAll(final List<Calculation> calculations) {
+			Map<BookIndex, List<Calculation>> scans = new IdentityHashMap<BookIndex, List<Calculation>>();
+			for (Calculation calculation : calculations) {
+				if (!calculation.isCurrent()) {
+					continue; // there is a newer calculation
+				}
+				try {
+					if (calculation.prepare()) {
+						List<Calculation> scan = scans.get(calculation.myIndex);
+						if (scan == null) {
+							scan = new ArrayList<Calculation>();
+							scans.put(calculation.myIndex, scan);
+						}
+						scan.add(calculation);
+					} else {
+						calculation.run();
+					}
+				} catch (Exception e) {
+					LOGGER.error("runAll: cannot calculate the sum", e);
+					calculation.myText = "   cannot determine sum";
+				}
 			}
-			if (getMaxDate() != null && transaction.getDatePosted().isAfter( getMaxDate()) ) {
-				continue;
+
+			for (Map.Entry<BookIndex, List<Calculation>> scan : scans.entrySet()) {
+				try {
+					List<SharedSumScan.Query> queries = new ArrayList<SharedSumScan.Query>();
+					for (Calculation calculation : scan.getValue()) {
+						queries.add(calculation.myQuery);
+					}
+					SharedSumScan.run(scan.getKey().getAccountTransactionIndex().getBook(), queries);
+					for (Calculation calculation : scan.getValue()) {
+						calculation.setResult(calculation.getQuerySum());
+					}
+				} catch (Exception e) {
+					LOGGER.error("runAll: cannot calculate the sums", e);
+					for (Calculation calculation : scan.getValue()) {
+						calculation.myText = "   cannot determine sum";
+					}
+				}
 			}
-			if (aTargetAccountsIDs.size() > 0 && !hasSplitWithAccount(transaction, aTargetAccountsIDs)) {
-				continue;
+		}
+
+		/**
+		 * @return whether the sum has not been recalculated since
+		 */
+		private boolean isCurrent() {
+			return myGeneration == myWidget.myGeneration.get();
+		}
+
+		/**
+		 * Show the result (on the event-thread).
+		 */
+		private void publish() {
+			if (!isCurrent()) {
+				return; // there is a newer calculation
 			}
-			if (alreadyHandled.contains(split)) {
-				continue;
+			myWidget.setValue(mySum);
+			myWidget.myTransactionsCounted = myTransactionsCounted;
+			myWidget.mySumLabel.setText(myText);
+			// the splits are not kept: the drill-down looks them up again
+			myQuery = null;
+			mySources = null;
+			myOwner = null;
+			myWidget.setDrilldown(mySum == null || getCurrencyAccount() == null ? null : this);
+		}
+
+		/**
+		 * @return whether the sum is to be calculated in a shared scan
+		 *         (with the query set up), otherwise call {@link #run()}
+		 */
+		private boolean prepare() {
+			if (mySourceAccounts.size() == 0) {
+				LOGGER.warn("There are no source-accounts given for this transaction-sum");
 			}
-			alreadyHandled.add(split);
 
-			if (getSummationType().equals(SUMMATIONTYPE.ONLYFROM) && split.getShares().isPositive()) {
-				continue;
-			} else if (getSummationType().equals(SUMMATIONTYPE.ONLYTO) && !split.getShares().isPositive()) {
-				continue;
+			myIndex = BookIndex.peek(myBooks);
+			myHierarchy = myIndex == null ?
+					AccountHierarchy.of(myBooks) : myIndex.getAccountHierarchy();
+			myTargetNodes = buildTransitiveClosure(myHierarchy, myTargetAccounts);
+
+			if (myIndex == null || Boolean.getBoolean(BENCHMARK_PROPERTY)) {
+				return false;
 			}
-			if (aSourceAccount.getQualifSecCurrID().getType() == currencyID.getType()
-					&& aSourceAccount.getQualifSecCurrID().equals(currencyID)) {
+			createQuery(true);
+			return true;
+		}
 
-				sum = sum.add(split.getShares());
+		/**
+		 * Calculate the sum on its own.
+		 */
+		private void run() {
+			if (myIndex == null) {
+				setResult(sumPerSplit(myHierarchy, myTargetNodes));
 			} else {
-				FixedPointNumber addMe = new FixedPointNumber(split.getShares());
-				// do not convert 0
-				if (!addMe.equals(new FixedPointNumber())) {
-					addMe = convert(aSourceAccount.getQualifSecCurrID(), addMe, currencyID);
+				setResult(benchmark());
+			}
+		}
+
+		/**
+		 * Calculate the sum on its own, split by split or in a scan.
+		 *
+		 * @see TransactionSum#calculateNow(boolean, boolean)
+		 */
+		private void runNow(final boolean indexed, final boolean withTotals) {
+			prepare();
+			if (!indexed) {
+				setResult(sumPerSplit(myHierarchy, myTargetNodes));
+				return;
+			}
+			if (myIndex == null) {
+				throw new IllegalStateException("the indexes of the file have not been built");
+			}
+			createQuery(withTotals);
+			SharedSumScan.run(myIndex.getAccountTransactionIndex().getBook(), Collections.singletonList(myQuery));
+			setResult(getQuerySum());
+		}
+
+		private void setResult(final FixedPointNumber sum) {
+			if (sum == null) {
+				myText = "   cannot determine sum";
+				return;
+			}
+
+			mySum = sum;
+			////////////////////////////////////
+			// set output
+			KMyMoneyAccount currencyAccount = getCurrencyAccount();
+			if (currencyAccount != null) {
+				myText = "   " + sum.toString() + ""
+						+ currencyAccount.getQualifSecCurrID();
+			} else {
+				myText = "   no account";
+			}
+		}
+
+		/**
+		 * @return the account the currency of which is shown with the sum (or null)
+		 */
+		private KMyMoneyAccount getCurrencyAccount() {
+			int targetNode = myTargetNodes.nextSetBit(0);
+			if (targetNode >= 0) {
+				return myHierarchy.getAccount(targetNode);
+			}
+			Iterator<KMyMoneyAccount> iterator2 = mySourceAccounts.iterator();
+			if (iterator2.hasNext()) {
+				return iterator2.next();
+			}
+			return null;
+		}
+
+		/**
+		 * Look up the splits the sum is made of (in the background),
+		 * by running its query once more, over the whole date-range.
+		 *
+		 * @return a table of these splits
+		 */
+		private KMyMoneyPagedAccountTransactionsTableModel createDrilldownModel() {
+			if (myIndex == null) {
+				// it has been summed up without the indexes of the file
+				myIndex = BookIndex.of(myBooks);
+			}
+			createQuery(false);
+			int[] splits = SharedSumScan.collectSplits(myIndex, myQuery);
+			myQuery = null;
+			LOGGER.debug("createDrilldownModel: " + splits.length + " splits");
+			return new KMyMoneyPagedAccountTransactionsTableModel(getCurrencyAccount(), splits);
+		}
+
+		/**
+		 * Sum up both ways and log how long each of them took.
+		 */
+		private FixedPointNumber benchmark() {
+			// not part of the measurement
+			myIndex.getAccountTransactionIndex();
+			myIndex.getPeriodTotals();
+
+			long start = System.nanoTime();
+			FixedPointNumber perSplitSum = sumPerSplit(myHierarchy, myTargetNodes);
+			int perSplitCount = myTransactionsCounted;
+			long perSplitTime = System.nanoTime() - start;
+
+			myTransactionsCounted = 0;
+			start = System.nanoTime();
+			createQuery(true);
+			SharedSumScan.run(myIndex.getAccountTransactionIndex().getBook(), Collections.singletonList(myQuery));
+			FixedPointNumber indexedSum = getQuerySum();
+			long indexedTime = System.nanoTime() - start;
+
+			boolean same = perSplitSum == null ? indexedSum == null :
+				indexedSum != null && perSplitSum.compareTo(indexedSum) == 0;
+			LOGGER.info("benchmark: per split " + (perSplitTime / 1000) + " µs (" + perSplitCount + " splits), "
+					+ "indexed " + (indexedTime / 1000) + " µs (" + myTransactionsCounted + " splits), "
+					+ (same && perSplitCount == myTransactionsCounted ? "same result" : "DIFFERENT results: " + perSplitSum + " / " + indexedSum));
+			return indexedSum;
+		}
+
+		/**
+		 * Sum up by walking the splits of the accounts of the source-accounts' subtrees.
+		 *
+		 * @param targetNodes the target-accounts and their descendants (nodes of the hierarchy)
+		 * @return the sum or null if it cannot be determined
+		 */
+		private FixedPointNumber sumPerSplit(final AccountHierarchy hierarchy, final BitSet targetNodes) {
+			////////////////////////////////////
+			// find all applicable transacion
+			Set<KMyMoneyTransactionSplit> transactions = new HashSet<KMyMoneyTransactionSplit>();
+			FixedPointNumber sum = new FixedPointNumber(0);
+			for (KMyMoneyAccount sourceAccount : mySourceAccounts) {
+				int sourceNode = hierarchy.getNode(sourceAccount);
+				if (sourceNode == AccountHierarchy.NO_NODE) {
+					LOGGER.warn("sumPerSplit: Account " + sourceAccount.getID() + " is not in the account-tree");
+					continue;
 				}
+				FixedPointNumber addMe =
+						buildSum(hierarchy,
+								sourceNode,
+								targetNodes,
+								sourceAccount.getQualifSecCurrID(),
+								transactions);
 				if (addMe == null) {
 					return null;
 				}
 				sum = sum.add(addMe);
 			}
-			myTransactionsCounted++;
-
+			return sum;
 		}
-		return sum;
-	}
 
-	/**
-	 * @param aTransaction
-	 * @param aTargetAccountsIDs
-	 * @return
-	 */
-	private boolean hasSplitWithAccount(KMyMoneyTransaction aTransaction, Set<KMMComplAcctID> aTargetAccountsIDs) {
-		List<? extends KMyMoneyTransactionSplit> splits = aTransaction.getSplits();
-		for (KMyMoneyTransactionSplit split : splits) {
-			if (aTargetAccountsIDs.contains(split.getAccountID())) {
-				return true;
+		/**
+		 * Set up the query of the sum for a shared scan over the compact book of the file:
+		 * the transactions of a source-account are those of its subtree that are also in
+		 * one of the target-accounts' subtrees, restricted to the range of
+		 * transaction-ordinals of the date-range.
+		 * <br>
+		 * A split is counted for the first source-account whose subtree contains its
+		 * account, so the shares can be summed per account in a single pass over the
+		 * transactions. The splits of accounts in another currency than their source-account
+		 * are collected instead, so that they are converted one by one as in
+		 * {@link #sumPerSplit(AccountHierarchy, BitSet)}. Without target-accounts (and 
+		 * without accounts to convert), whole months (and days of the current year)
+		 * are taken from the file's {@link PeriodTotals}, so only the splits of the
+		 * partial months at the ends of the date-range have to be looked at, plus
+		 * the few splits that the totals leave out because they are not exact in units.
+		 *
+		 * @param withTotals whether the {@link PeriodTotals} may be used
+		 *                   (otherwise all the splits of the date-range are looked at)
+		 */
+		private void createQuery(final boolean withTotals) {
+			AccountTransactionIndex acctTrx = myIndex.getAccountTransactionIndex();
+			CompactBook book = acctTrx.getBook();
+			int universe = book.getTransactionCount();
+
+			// The source-account each account is summed for
+			mySources = new ArrayList<KMyMoneyAccount>();
+			myOwner = new int[book.getAccountCount()];
+			Arrays.fill(myOwner, -1);
+			TransactionBitmap sourceTrx = TransactionBitmap.EMPTY;
+			for (KMyMoneyAccount sourceAccount : mySourceAccounts) {
+				int sourceOrd = myIndex.getAccountOrdinal(sourceAccount);
+				if (sourceOrd == CompactBook.NO_ACCOUNT) {
+					continue;
+				}
+				int sourceNode = myHierarchy.getNode(sourceAccount);
+				if (sourceNode == AccountHierarchy.NO_NODE) {
+					LOGGER.warn("createQuery: Account " + sourceAccount.getID() + " is not in the account-tree");
+					continue;
+				}
+				for (int node = sourceNode; node < myHierarchy.getSubtreeEnd(sourceNode); node++) {
+					int acct = myIndex.getAccountOrdinal(myHierarchy.getAccount(node));
+					if (acct != CompactBook.NO_ACCOUNT && myOwner[acct] == -1) {
+						myOwner[acct] = mySources.size();
+					}
+				}
+				mySources.add(sourceAccount);
+				sourceTrx = sourceTrx.or(acctTrx.getSubtreeTransactions(sourceOrd), universe);
+			}
+			boolean[] accounts = new boolean[myOwner.length];
+			boolean[] perSplit = new boolean[myOwner.length];
+			boolean hasPerSplit = false;
+			for (int acct = 0; acct < myOwner.length; acct++) {
+				accounts[acct] = myOwner[acct] != -1;
+				if (accounts[acct]) {
+					KMyMoneyAccount account = myIndex.getAccount(acct);
+					perSplit[acct] = account == null
+							|| !account.getQualifSecCurrID().equals(mySources.get(myOwner[acct]).getQualifSecCurrID());
+					hasPerSplit |= perSplit[acct];
+				}
 			}
-		}
-		return false;
-	}
 
-	private FixedPointNumber convert(
-			final KMMQualifSecCurrID aCurrencyIDFrom,
-			final FixedPointNumber aSum,
-			final KMMQualifSecCurrID aCurrencyIDTo) {
-		ComplexPriceTable currencyTable = getBooks().getCurrencyTable();
+			if (myTargetAccounts.size() > 0) {
+				TransactionBitmap targetTrx = TransactionBitmap.EMPTY;
+				for (KMyMoneyAccount targetAccount : myTargetAccounts) {
+					int targetOrd = myIndex.getAccountOrdinal(targetAccount);
+					if (targetOrd != CompactBook.NO_ACCOUNT) {
+						targetTrx = targetTrx.or(acctTrx.getSubtreeTransactions(targetOrd), universe);
+					}
+				}
+				sourceTrx = sourceTrx.and(targetTrx, universe);
+			}
 
-		if (currencyTable == null) {
-			LOGGER.warn("SimpleAccount.getBalance() - cannot transfer "
-					+ "to given currency because we have no currency-table!");
-			return null;
+			boolean inflow = !mySummationType.equals(SUMMATIONTYPE.ONLYFROM);
+			boolean outflow = !mySummationType.equals(SUMMATIONTYPE.ONLYTO);
+			int fromTrx = acctTrx.getFirstTransaction(myMinDate);
+			int toTrx = acctTrx.getEndTransaction(myMaxDate);
+			long[] sums = new long[myOwner.length + 1];
+			// (the totals cannot be restricted to target-accounts, nor converted split by split)
+			PeriodTotals totals = withTotals && myTargetAccounts.size() == 0 && !hasPerSplit ?
+					myIndex.getPeriodTotals() : null;
+			int firstBucket = totals == null ? 0 : totals.getFirstBucketFrom(fromTrx);
+			int endBucket = totals == null ? 0 : totals.getLastBucketTo(toTrx);
+			if (totals == null || firstBucket > endBucket) {
+				myQuery = new SharedSumScan.Query(accounts, perSplit, sourceTrx, inflow, outflow,
+						new int[] {fromTrx, toTrx}, sums, new int[0]);
+				return;
+			}
+
+			// the buckets' totals...
+			for (int acct = 0; acct < myOwner.length; acct++) {
+				if (!accounts[acct]) {
+					continue;
+				}
+				if (inflow) {
+					sums[acct] += totals.getInflow(acct, firstBucket, endBucket);
+					sums[myOwner.length] += totals.getInflowCount(acct, firstBucket, endBucket);
+				}
+				if (outflow) {
+					sums[acct] += totals.getOutflow(acct, firstBucket, endBucket);
+					sums[myOwner.length] += totals.getOutflowCount(acct, firstBucket, endBucket);
+				}
+			}
+			// ...plus their inexact splits one by one...
+			int[] splits = book.getInexactSplits(totals.getBucketStart(firstBucket), totals.getBucketStart(endBucket));
+			int nofSplits = 0;
+			for (int splt : splits) {
+				int acct = book.getSplitAccount(splt);
+				if (acct != CompactBook.NO_ACCOUNT && accounts[acct]
+						&& sourceTrx.contains(book.getSplitTransaction(splt))) {
+					splits[nofSplits++] = splt;
+				}
+			}
+			// ...plus the splits before and after them
+			myQuery = new SharedSumScan.Query(accounts, perSplit, sourceTrx, inflow, outflow,
+					new int[] {fromTrx, totals.getBucketStart(firstBucket), totals.getBucketStart(endBucket), toTrx},
+					sums, Arrays.copyOf(splits, nofSplits));
 		}
-		FixedPointNumber sum = new FixedPointNumber(aSum);
-
-		if (!currencyTable.convertToBaseCurrency(
-				sum,
-				aCurrencyIDFrom)) {
-			Collection<String> currencies = getBooks().getCurrencyTable().getCurrencies(
-					aCurrencyIDFrom.getType());
-			LOGGER.warn("SimpleAccount.getBalance() - cannot transfer "
-					+ "from our currency '"
-					+ aCurrencyIDFrom.getType() + "'-'"
-					+ aCurrencyIDFrom
-					+ "' to the base-currency!"
-					+ " \n(we know " + getBooks().getCurrencyTable().getNameSpaces().size()
-					+ " currency-namespaces and "
-					+ (currencies == null ? "no" : "" + currencies.size())
-					+ " currencies in our namespace)");
-			return null;
+
+		/**
+		 * @return the sum of the query (after the scan) or null if it cannot be determined
+		 */
+		private FixedPointNumber getQuerySum() {
+			long[] acctSums = myQuery.getSums();
+			myTransactionsCounted += (int) acctSums[myOwner.length];
+
+			// the exact shares of the accounts in the currency of their source-account
+			FixedPointNumber sum = new FixedPointNumber(0);
+			for (int acct = 0; acct < myOwner.length; acct++) {
+				if (myOwner[acct] != -1 && acctSums[acct] != 0) {
+					sum = sum.add(Amounts.toFixedPointNumber(acctSums[acct]));
+				}
+			}
+
+			// the other splits one by one, as in addSplits()
+			CompactBook book = myIndex.getCompactBook();
+			for (int splt : myQuery.getSplits()) {
+				KMyMoneyTransactionSplit split = myIndex.getSplit(splt);
+				if (split == null) {
+					LOGGER.warn("getQuerySum: Split " + splt + " is not in the file");
+					return null;
+				}
+				if (mySummationType.equals(SUMMATIONTYPE.ONLYFROM) && split.getShares().isPositive()) {
+					continue;
+				} else if (mySummationType.equals(SUMMATIONTYPE.ONLYTO) && !split.getShares().isPositive()) {
+					continue;
+				}
+				KMMQualifSecCurrID currencyID = mySources.get(myOwner[book.getSplitAccount(splt)]).getQualifSecCurrID();
+				KMMQualifSecCurrID acctCurrencyID = split.getAccount().getQualifSecCurrID();
+				if (acctCurrencyID.getType() == currencyID.getType()
+						&& acctCurrencyID.equals(currencyID)) {
+					sum = sum.add(split.getShares());
+				} else {
+					FixedPointNumber addMe = new FixedPointNumber(split.getShares());
+					// do not convert 0
+					if (!addMe.equals(new FixedPointNumber())) {
+						addMe = convert(acctCurrencyID, addMe, currencyID);
+					}
+					if (addMe == null) {
+						return null;
+					}
+					sum = sum.add(addMe);
+				}
+				myTransactionsCounted++;
+			}
+			return sum;
 		}
 
-		if (!currencyTable.convertFromBaseCurrency(sum, aCurrencyIDTo)) {
-			LOGGER.warn("SimpleAccount.getBalance() - cannot transfer "
-					+ "from base-currenty to given currency '"
-					+ aCurrencyIDTo.getType()
-					+ "-"
-					+ aCurrencyIDTo
-					+ "'!");
-			return null;
+		/**
+		 * @param aSourceNode    the node of the source-account, the subtree of which is summed up
+		 * @param aTargetNodes   the target-accounts and their descendants
+		 * @param alreadyHandled all transactions we have already visited (if multiple target-accounts are involved)
+		 */
+		private FixedPointNumber buildSum(final AccountHierarchy hierarchy,
+				final int aSourceNode,
+				final BitSet aTargetNodes,
+				final KMMQualifSecCurrID currencyID,
+				final Set<KMyMoneyTransactionSplit> alreadyHandled) {
+
+			FixedPointNumber sum = new FixedPointNumber();
+			for (int node = aSourceNode; node < hierarchy.getSubtreeEnd(aSourceNode); node++) {
+				sum = addSplits(hierarchy.getAccount(node), hierarchy, aTargetNodes, currencyID, alreadyHandled, sum);
+				if (sum == null) {
+					return null;
+				}
+			}
+			return sum;
 		}
-		return sum;
-	}
 
-	/**
-	 * Build the transitive closure of a list of accounts
-	 * by adding all child-accounts.
-	 *
-	 * @param accounts the account-list to walk
-	 * @return a set of all given accounts and all their child-accounts.
-	 */
-	private Collection<? extends KMyMoneyAccount> buildTransitiveClosure(
-			final Collection<? extends KMyMoneyAccount> accounts) {
+		/**
+		 * @return sum plus the splits of the account or null if they cannot be converted
+		 */
+		private FixedPointNumber addSplits(final KMyMoneyAccount aSourceAccount,
+				final AccountHierarchy hierarchy,
+				final BitSet aTargetNodes,
+				final KMMQualifSecCurrID currencyID,
+				final Set<KMyMoneyTransactionSplit> alreadyHandled,
+				final FixedPointNumber aSum) {
+
+			FixedPointNumber sum = aSum;
+			List<? extends KMyMoneyTransactionSplit> splits
+					= aSourceAccount.getTransactionSplits();
+			for (KMyMoneyTransactionSplit split : splits) {
+				KMyMoneyTransaction transaction = split.getTransaction();
+				if (myMinDate != null && transaction.getDatePosted().isBefore( myMinDate) ) {
+					continue;
+				}
+				if (myMaxDate != null && transaction.getDatePosted().isAfter( myMaxDate) ) {
+					continue;
+				}
+				if (!aTargetNodes.isEmpty() && !hasSplitWithAccount(transaction, hierarchy, aTargetNodes)) {
+					continue;
+				}
+				if (alreadyHandled.contains(split)) {
+					continue;
+				}
+				alreadyHandled.add(split);
 
-		if (accounts.size() == 0) {
-			return accounts;
+				if (mySummationType.equals(SUMMATIONTYPE.ONLYFROM) && split.getShares().isPositive()) {
+					continue;
+				} else if (mySummationType.equals(SUMMATIONTYPE.ONLYTO) && !split.getShares().isPositive()) {
+					continue;
+				}
+				if (aSourceAccount.getQualifSecCurrID().getType() == currencyID.getType()
+						&& aSourceAccount.getQualifSecCurrID().equals(currencyID)) {
+
+					sum = sum.add(split.getShares());
+				} else {
+					FixedPointNumber addMe = new FixedPointNumber(split.getShares());
+					// do not convert 0
+					if (!addMe.equals(new FixedPointNumber())) {
+						addMe = convert(aSourceAccount.getQualifSecCurrID(), addMe, currencyID);
+					}
+					if (addMe == null) {
+						return null;
+					}
+					sum = sum.add(addMe);
+				}
+				myTransactionsCounted++;
+
+			}
+			return sum;
+		}
+
+		/**
+		 * @param aTransaction
+		 * @param aTargetNodes the nodes of the accounts to look for
+		 * @return whether one of the transaction's splits is in one of the accounts
+		 */
+		private boolean hasSplitWithAccount(KMyMoneyTransaction aTransaction, AccountHierarchy hierarchy, BitSet aTargetNodes) {
+			List<? extends KMyMoneyTransactionSplit> splits = aTransaction.getSplits();
+			for (KMyMoneyTransactionSplit split : splits) {
+				int node = hierarchy.getNode(split.getAccountID());
+				if (node != AccountHierarchy.NO_NODE && aTargetNodes.get(node)) {
+					return true;
+				}
+			}
+			return false;
 		}
 
-		Set<KMyMoneyAccount> retval = new HashSet<KMyMoneyAccount>(accounts);
+		private FixedPointNumber convert(
+				final KMMQualifSecCurrID aCurrencyIDFrom,
+				final FixedPointNumber aSum,
+				final KMMQualifSecCurrID aCurrencyIDTo) {
+			ComplexPriceTable currencyTable = myBooks.getCurrencyTable();
+
+			if (currencyTable == null) {
+				LOGGER.warn("SimpleAccount.getBalance() - cannot transfer "
+						+ "to given currency because we have no currency-table!");
+				return null;
+			}
+			// the rates are looked up once per pair of currencies
+			return ConversionRates.of(currencyTable).convert(aSum, aCurrencyIDFrom, aCurrencyIDTo);
+		}
 
-		// TODO implement TransactionSum.buildTransitiveClosure
-		for (KMyMoneyAccount account : accounts) {
-			Collection<? extends KMyMoneyAccount> allChildren
-					= buildTransitiveClosure(account.getChildren());
-			retval.addAll(allChildren);
+		/**
+		 * Build the transitive closure of a list of accounts
+		 * by adding all child-accounts.
+		 *
+		 * @param accounts the account-list to walk
+		 * @return the nodes of all given accounts and all their child-accounts
+		 *         (the subtree of an account is a range of nodes)
+		 */
+		private BitSet buildTransitiveClosure(final AccountHierarchy hierarchy,
+				final Collection<? extends KMyMoneyAccount> accounts) {
+
+			BitSet retval = new BitSet(hierarchy.getNodeCount());
+			for (KMyMoneyAccount account : accounts) {
+				int node = hierarchy.getNode(account);
+				if (node != AccountHierarchy.NO_NODE) {
+					retval.set(node, hierarchy.getSubtreeEnd(node));
+				}
+			}
+			return retval;
 		}
-		return retval;
 	}
 
 	/**
@@ -407,11 +1060,70 @@ public class TransactionSum extends JPanel {
 		this.setLayout(new BorderLayout());
 		myNameLabel.setText(name);
 		mySumLabel.setText("...∑");
-		myDrilldownLabel.setText("");//TODO: implement drill-down
+		myDrilldownLabel.setText("");
+		myDrilldownLabel.setToolTipText("show the splits of this sum");
+		myDrilldownLabel.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+		myDrilldownLabel.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(final MouseEvent e) {
+				openDrilldown();
+			}
+		});
 		this.add(myNameLabel, BorderLayout.WEST);
 		this.add(mySumLabel, BorderLayout.CENTER);
 		this.add(myDrilldownLabel, BorderLayout.EAST);
 	}
+
+	/**
+	 * @param aCalculation the calculation of the value shown or null
+	 */
+	private void setDrilldown(final Calculation aCalculation) {
+		myDrilldown = aCalculation;
+		myDrilldownLabel.setText(aCalculation == null ? "" : "   (" + myTransactionsCounted + " splits)");
+		myDrilldownLabel.setEnabled(true);
+	}
+
+	/**
+	 * Open a register of the splits of the value shown
+	 * (looked up in the background).
+	 */
+	private void openDrilldown() {
+		final Calculation calculation = myDrilldown;
+		if (calculation == null || !myDrilldownLabel.isEnabled()) {
+			return;
+		}
+
+		myDrilldownLabel.setEnabled(false);
+		CALCULATOR.execute(new Runnable() {
+			public void run() {
+				KMyMoneyPagedAccountTransactionsTableModel model = null;
+				try {
+					model = calculation.createDrilldownModel();
+				} catch (Exception e) {
+					LOGGER.error("openDrilldown: cannot look up the splits of the sum", e);
+				}
+				final KMyMoneyPagedAccountTransactionsTableModel drilldownModel = model;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						myDrilldownLabel.setEnabled(true);
+						if (drilldownModel != null) {
+							showDrilldown(drilldownModel);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	private void showDrilldown(final KMyMoneyPagedAccountTransactionsTableModel aModel) {
+		TransactionsPanel newPanel = new TransactionsPanel();
+		newPanel.setModel(aModel);
+		JFrame newFrame = new JFrame(myNameLabel.getText());
+		newFrame.getContentPane().add(newPanel);
+		newFrame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+		newFrame.pack();
+		newFrame.setVisible(true);
+	}
 	//------------------------ support for propertyChangeListeners -------------
 
 	/**
@@ -516,7 +1228,7 @@ public class TransactionSum extends JPanel {
 		}
 		myBooks = aBooks;
 		// <<insert code to react further to this change here
-		reCalculate();
+		reCalculateLater();
 		PropertyChangeSupport propertyChangeFirer = getPropertyChangeSupport();
 		if (propertyChangeFirer != null) {
 			propertyChangeFirer.firePropertyChange("aBooks", old, aBooks);
@@ -546,7 +1258,7 @@ public class TransactionSum extends JPanel {
 		}
 		mySourceAccounts = aSourceAccounts;
 		// <<insert code to react further to this change here
-		reCalculate();
+		reCalculateLater();
 		PropertyChangeSupport propertyChangeFirer = getPropertyChangeSupport();
 		if (propertyChangeFirer != null) {
 			propertyChangeFirer.firePropertyChange("aSourceAccounts", old,
@@ -577,7 +1289,7 @@ public class TransactionSum extends JPanel {
 		}
 		mySummationType = aSummationType;
 		// <<insert code to react further to this change here
-		reCalculate();
+		reCalculateLater();
 		PropertyChangeSupport propertyChangeFirer = getPropertyChangeSupport();
 		if (propertyChangeFirer != null) {
 			propertyChangeFirer.firePropertyChange("aSummationType", old,
@@ -608,7 +1320,7 @@ public class TransactionSum extends JPanel {
 		}
 		myTargetAccounts = aTargetAccounts;
 		// <<insert code to react further to this change here
-		reCalculate();
+		reCalculateLater();
 		PropertyChangeSupport propertyChangeFirer = getPropertyChangeSupport();
 		if (propertyChangeFirer != null) {
 			propertyChangeFirer.firePropertyChange("aTargetAccounts", old,
@@ -639,7 +1351,7 @@ public class TransactionSum extends JPanel {
 		}
 		myMinDate = aMinDate;
 		// <<insert code to react further to this change here
-		reCalculate();
+		reCalculateLater();
 		PropertyChangeSupport propertyChangeFirer = getPropertyChangeSupport();
 		if (propertyChangeFirer != null) {
 			propertyChangeFirer.firePropertyChange("aMinDate", old, aMinDate);
@@ -669,7 +1381,7 @@ public class TransactionSum extends JPanel {
 		}
 		myMaxDate = aMaxDate;
 		// <<insert code to react further to this change here
-		reCalculate();
+		reCalculateLater();
 		PropertyChangeSupport propertyChangeFirer = getPropertyChangeSupport();
 		if (propertyChangeFirer != null) {
 			propertyChangeFirer.firePropertyChange("aMaxDate", old, aMaxDate);
@@ -0,0 +1,128 @@
+package org.kmymoney.viewer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+import java.awt.GraphicsEnvironment;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kmymoney.api.read.KMyMoneyFile;
+import org.kmymoney.viewer.data.BookIndex;
+import org.kmymoney.viewer.models.KMyMoneyAccountsTreeModel;
+import org.kmymoney.viewer.models.KMyMoneyFileAdapter;
+import org.kmymoney.viewer.models.KMyMoneyFileImpl;
+import org.kmymoney.viewer.models.KMyMoneyFileWithRoot;
+
+/**
+ * Loading a file must parse it exactly once, no matter how many
+ * models and indexes are built on top of it.
+ */
+public class TestLoadFile {
+
+	// ::MAGIC
+	private static final long LOAD_TIMEOUT_MILLIS = 60000;
+
+	/**
+	 * The viewer, counting how often it parses a file.
+	 */
+	private static final class CountingViewer extends JKMyMoneyViewer {
+		private static final long serialVersionUID = 1L;
+
+		private final AtomicInteger myParseCount = new AtomicInteger();
+
+		@Override
+		protected KMyMoneyFile createModelFromFile(final File f) throws IOException {
+			myParseCount.incrementAndGet();
+			return super.createModelFromFile(f);
+		}
+
+		public int getParseCount() {
+			return myParseCount.get();
+		}
+	}
+
+	// ---------------------------------------------------------------
+
+	private File myFile;
+
+	@Before
+	public void setUp() throws IOException {
+		myFile = File.createTempFile("TestLoadFile", ".xml");
+		myFile.deleteOnExit();
+		try ( InputStream in = TestLoadFile.class.getResourceAsStream("/test.xml") ) {
+			Files.copy(in, myFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	@Test
+	public void testLoadParsesOnce() throws Exception {
+		// the viewer is a frame
+		assumeFalse(GraphicsEnvironment.isHeadless());
+
+		final CountingViewer viewer = new CountingViewer();
+		try {
+			SwingUtilities.invokeAndWait(new Runnable() {
+				public void run() {
+					viewer.loadFile(myFile);
+				}
+			});
+			KMyMoneyFileWithRoot model = waitForModel(viewer);
+
+			assertEquals(1, viewer.getParseCount());
+			assertTrue(model instanceof KMyMoneyFileImpl);
+			assertSame(model, JKMyMoneyViewer.wrapModel(model.getBook()));
+			BookIndex index = BookIndex.peek(model.getBook());
+			assertNotNull(index);
+			assertEquals(3, index.getCompactBook().getTransactionCount());
+			assertEquals(1, viewer.getParseCount());
+		}
+		finally {
+			viewer.dispose();
+		}
+	}
+
+	private static KMyMoneyFileWithRoot waitForModel(final JKMyMoneyViewer viewer) throws Exception {
+		final AtomicReference<KMyMoneyFileWithRoot> model = new AtomicReference<KMyMoneyFileWithRoot>();
+		long end = System.currentTimeMillis() + LOAD_TIMEOUT_MILLIS;
+		while ( model.get() == null && System.currentTimeMillis() < end ) {
+			Thread.sleep(50);
+			// the load-worker swaps the model in on the EDT
+			SwingUtilities.invokeAndWait(new Runnable() {
+				public void run() {
+					model.set(viewer.getModel());
+				}
+			});
+		}
+		assertNotNull("file has not been loaded in time", model.get());
+		return model.get();
+	}
+
+	@Test
+	public void testWrapLoadedFileDoesNotParse() throws Exception {
+		KMyMoneyFile loaded = new org.kmymoney.api.read.impl.KMyMoneyFileImpl(myFile);
+		// anything that parsed the file again would fail now
+		assertTrue(myFile.delete());
+
+		KMyMoneyFileWithRoot model = JKMyMoneyViewer.wrapModel(loaded);
+		KMyMoneyAccountsTreeModel treeModel = new KMyMoneyAccountsTreeModel(model);
+
+		assertTrue(model instanceof KMyMoneyFileAdapter);
+		assertSame(loaded, model.getBook());
+		assertNotNull(model.getRootAccount());
+		assertNotNull(treeModel.getRoot());
+	}
+
+}
@@ -0,0 +1,163 @@
+package org.kmymoney.viewer.models;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.util.Currency;
+import java.util.List;
+
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyFile;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.kmymoney.api.read.impl.KMyMoneyFileImpl;
+import org.kmymoney.base.basetypes.complex.KMMQualifSecCurrID;
+import org.kmymoney.viewer.models.KMyMoneySimpleAccountTransactionsTableModel.TableCols;
+
+/**
+ * Measures the bytes allocated per rendered row of an account's register,
+ * i.e. for one <code>getValueAt</code> per column:
+ * <ul>
+ *   <li><code>per-cell</code>: a new NumberFormat (and Currency) for every
+ *       cell, as the table models used to do,</li>
+ *   <li><code>shared</code>: the formats of {@link AmountFormats}, 
+ *       amounts formatted anew for every cell,</li>
+ *   <li><code>model</code>: {@link KMyMoneySimpleAccountTransactionsTableModel},
+ *       first pass (materializes the rows and renders the amounts),</li>
+ *   <li><code>model-repaint</code>: the same model again (amounts already rendered).</li>
+ * </ul>
+ * The account with the most splits of the given file is used.
+ * <br>
+ * Usage: <code>FormatAllocationBenchmark &lt;file&gt; [&lt;rounds&gt;]</code>
+ */
+public class FormatAllocationBenchmark {
+
+	// ::MAGIC
+	private static final int DEFAULT_ROUNDS = 5;
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	// Keeps the results alive, so that nothing is optimized away
+	private static long sink = 0;
+
+	// ---------------------------------------------------------------
+
+	public static void main(final String[] args) throws Exception {
+		if ( args.length < 1 ) {
+			System.err.println("Usage: FormatAllocationBenchmark <file> [<rounds>]");
+			System.exit(1);
+		}
+
+		KMyMoneyFile book = new KMyMoneyFileImpl(new File(args[0]));
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+
+		KMyMoneyAccount account = null;
+		for ( KMyMoneyAccount topAcct : book.getTopAccounts() ) {
+			account = getLargest(topAcct, account);
+		}
+		List<? extends KMyMoneyTransactionSplit> splits = account.getTransactionSplits();
+		System.out.println("Account '" + account.getQualifiedName() + "': " + splits.size() + " rows");
+		if ( splits.isEmpty() ) {
+			return;
+		}
+
+		for ( int round = 1; round <= rounds; round++ ) {
+			long start = getAllocatedBytes();
+			renderPerCell(account, splits);
+			long perCell = getAllocatedBytes() - start;
+
+			start = getAllocatedBytes();
+			renderShared(account, splits);
+			long shared = getAllocatedBytes() - start;
+
+			start = getAllocatedBytes();
+			KMyMoneySimpleAccountTransactionsTableModel model = new KMyMoneySimpleAccountTransactionsTableModel(account);
+			renderModel(model);
+			long modelFirst = getAllocatedBytes() - start;
+
+			start = getAllocatedBytes();
+			renderModel(model);
+			long modelRepaint = getAllocatedBytes() - start;
+
+			System.out.println("#" + round + " bytes per row: " +
+							   "per-cell " + perCell / splits.size() + ", " +
+							   "shared " + shared / splits.size() + ", " +
+							   "model " + modelFirst / splits.size() + ", " +
+							   "model-repaint " + modelRepaint / splits.size());
+		}
+		System.out.println("(" + sink + ")");
+	}
+
+	private static KMyMoneyAccount getLargest(final KMyMoneyAccount acct, final KMyMoneyAccount largest) {
+		KMyMoneyAccount result = largest;
+		if ( result == null || acct.getTransactionSplits().size() > result.getTransactionSplits().size() ) {
+			result = acct;
+		}
+		for ( KMyMoneyAccount child : acct.getChildren() ) {
+			result = getLargest(child, result);
+		}
+		return result;
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * Like the table models used to: a new format for every cell,
+	 * the amount-columns (plus or minus, balance) formatted with it.
+	 */
+	private static void renderPerCell(final KMyMoneyAccount account, final List<? extends KMyMoneyTransactionSplit> splits) {
+		KMMQualifSecCurrID secCurr = account.getQualifSecCurrID();
+		BigDecimal balance = BigDecimal.ZERO;
+		for ( KMyMoneyTransactionSplit split : splits ) {
+			BigDecimal shares = split.getShares().getBigDecimal();
+			balance = balance.add(shares);
+			for ( int col = 0; col < TableCols.values().length; col++ ) {
+				NumberFormat format = NumberFormat.getNumberInstance();
+				try {
+					if ( secCurr.getType() == KMMQualifSecCurrID.Type.CURRENCY ) {
+						Currency currency = Currency.getInstance(secCurr.getCode());
+						format = NumberFormat.getCurrencyInstance();
+						format.setCurrency(currency);
+					}
+				}
+				catch (Exception exc) {
+					// as before: the number-format is used
+				}
+				if ( ( col == TableCols.PLUS.ordinal() && shares.signum() > 0 ) ||
+					 ( col == TableCols.MINUS.ordinal() && shares.signum() <= 0 ) ) {
+					sink += format.format(shares).length();
+				} else if ( col == TableCols.BALANCE.ordinal() ) {
+					sink += format.format(balance).length();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The shared formats, but every amount formatted anew.
+	 */
+	private static void renderShared(final KMyMoneyAccount account, final List<? extends KMyMoneyTransactionSplit> splits) {
+		KMMQualifSecCurrID secCurr = account.getQualifSecCurrID();
+		BigDecimal balance = BigDecimal.ZERO;
+		for ( KMyMoneyTransactionSplit split : splits ) {
+			BigDecimal shares = split.getShares().getBigDecimal();
+			balance = balance.add(shares);
+			sink += AmountFormats.format(secCurr, shares).length();
+			sink += AmountFormats.format(secCurr, balance).length();
+		}
+	}
+
+	private static void renderModel(final KMyMoneySimpleAccountTransactionsTableModel model) {
+		for ( int row = 0; row < model.getRowCount(); row++ ) {
+			for ( int col = 0; col < model.getColumnCount(); col++ ) {
+				sink += model.getValueAt(row, col).hashCode();
+			}
+		}
+	}
+
+	private static long getAllocatedBytes() {
+		return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+}
@@ -0,0 +1,141 @@
+package org.kmymoney.viewer.widgets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyFile;
+import org.kmymoney.viewer.data.BookIndex;
+import org.kmymoney.viewer.models.KMyMoneyFileImpl;
+
+import xyz.schnorxoborx.base.numbers.FixedPointNumber;
+
+/**
+ * The sum of the shared scan over the indexes of the file, with and without
+ * its period-totals, must be the same as summing up split by split.
+ * <br>
+ * The file has transactions in January to April 2024, two of them
+ * in March with splits of a third of a unit.
+ */
+public class TestTransactionSum {
+
+	private static final LocalDate[][] DATE_RANGES = {
+		{ null, null },
+		// partial months at both ends, February and March in between
+		{ LocalDate.of(2024, 1, 15), LocalDate.of(2024, 4, 10) },
+		// within a month, with both thirds
+		{ LocalDate.of(2024, 3, 5), LocalDate.of(2024, 3, 31) },
+	};
+
+	// ---------------------------------------------------------------
+
+	private KMyMoneyFile myBook;
+
+	@Before
+	public void setUp() throws IOException {
+		File file = File.createTempFile("TestTransactionSum", ".xml");
+		file.deleteOnExit();
+		try ( InputStream in = TestTransactionSum.class.getResourceAsStream("/transactionsum.xml") ) {
+			Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		myBook = new KMyMoneyFileImpl(file);
+		assertNotNull(BookIndex.of(myBook));
+	}
+
+	@Test
+	public void testScanOfAccountMatchesPerSplit() {
+		assertSameSums(getAccount("A000001"));
+	}
+
+	@Test
+	public void testScanOfSubtreeMatchesPerSplit() {
+		assertSameSums(getAccount("AStd::Expense"));
+	}
+
+	@Test
+	public void testInexactSplitsAreCounted() {
+		TransactionSum sum = createSum(getAccount("A000001"), TransactionSum.SUMMATIONTYPE.ALL, null, null);
+		sum.calculateNow(true, true);
+
+		assertEquals(8, sum.getTransactionsCounted());
+		assertEquals(0, sum.getValue().compareTo(perSplit(sum)));
+	}
+
+	// ---------------------------------------------------------------
+
+	private void assertSameSums(final KMyMoneyAccount source) {
+		for ( TransactionSum.SUMMATIONTYPE type : TransactionSum.SUMMATIONTYPE.values() ) {
+			for ( LocalDate[] range : DATE_RANGES ) {
+				String what = type + " " + range[0] + ".." + range[1];
+				TransactionSum sum = createSum(source, type, range[0], range[1]);
+
+				FixedPointNumber expected = perSplit(sum);
+				int expectedCount = sum.getTransactionsCounted();
+				assertNotNull(what, expected);
+				assertTrue(what, expectedCount > 0);
+
+				sum.calculateNow(true, false);
+				assertEquals(what + " (scan)", 0, expected.compareTo(sum.getValue()));
+				assertEquals(what + " (scan)", expectedCount, sum.getTransactionsCounted());
+
+				sum.calculateNow(true, true);
+				assertEquals(what + " (scan with totals)", 0, expected.compareTo(sum.getValue()));
+				assertEquals(what + " (scan with totals)", expectedCount, sum.getTransactionsCounted());
+			}
+		}
+	}
+
+	private static FixedPointNumber perSplit(final TransactionSum sum) {
+		sum.calculateNow(false, false);
+		return sum.getValue();
+	}
+
+	private TransactionSum createSum(final KMyMoneyAccount source,
+									 final TransactionSum.SUMMATIONTYPE type,
+									 final LocalDate minDate,
+									 final LocalDate maxDate) {
+		Set<KMyMoneyAccount> sources = new HashSet<KMyMoneyAccount>(Collections.singleton(source));
+		return new TransactionSum.Builder(myBook)
+				.sourceAccounts(sources)
+				.summationType(type)
+				.dateRange(minDate, maxDate)
+				.build();
+	}
+
+	private KMyMoneyAccount getAccount(final String acctID) {
+		for ( KMyMoneyAccount topAcct : myBook.getTopAccounts() ) {
+			KMyMoneyAccount acct = findAccount(topAcct, acctID);
+			if ( acct != null ) {
+				return acct;
+			}
+		}
+		throw new IllegalArgumentException("no account " + acctID);
+	}
+
+	private static KMyMoneyAccount findAccount(final KMyMoneyAccount acct, final String acctID) {
+		if ( acct.getID().toString().equals(acctID) ) {
+			return acct;
+		}
+		for ( KMyMoneyAccount child : acct.getChildren() ) {
+			KMyMoneyAccount found = findAccount(child, acctID);
+			if ( found != null ) {
+				return found;
+			}
+		}
+		return null;
+	}
+
+}